@@ -0,0 +1,309 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+
+/**
+ * <code>Branch</code> stores a branch of a tableau: the formulas on the branch
+ * in order, and which of them have already been expanded on this branch. The
+ * expansion marks belong to the branch and not to the formulas, so two branches
+ * sharing the same <code>Formula</code> objects can be expanded independently.
+ * <p>
+ * A branch is immutable. Every update returns a new branch which shares its
+ * structure with the old one, so splitting a branch in two costs nothing and
+ * adding a formula costs O(log n) at most. Formulas are kept in two persistent
+ * lists:
+ * <pre>
+ *   front : formulas inserted at the beginning, in order
+ *   back  : formulas appended at the end, most recent first
+ * </pre>
+ * The unexpanded formulas of <code>front</code> are kept in the same order in
+ * <code>agenda</code>; those of <code>back</code> are kept in
+ * <code>pending</code>, a leftist heap ordered by the priority given when they
+ * were appended and then by order of appending.
+ * @author Syeed Ibn Faiz
+ */
+class Branch {
+
+    private final Node front;           //formulas at the front of the branch
+    private final Node back;            //formulas appended to the branch, in reverse order
+    private final Node agenda;          //unexpanded formulas of front
+    private final Heap pending;         //unexpanded formulas of back
+    private final long appended;        //number of formulas ever appended
+    private final int size;
+    private final int unexpanded;
+    private final int depth;            //rules applied from the root
+    private final ClosureIndex index;   //detects closure as formulas are added
+
+    /**
+     * Constructs a branch from a list of formulas. A formula is initially marked
+     * expanded only if it was created as such (e.g. generic justification formulas).
+     * @param list formulas of the branch
+     */
+    public Branch(ArrayList<Formula> list) {
+        Node f = null;
+        Node a = null;
+        int u = 0;
+        ClosureIndex c = ClosureIndex.EMPTY.addAll(list);
+        for (int i = list.size() - 1; i >= 0; i--) {
+            f = new Node(list.get(i), f);
+            if (!list.get(i).isExpanded()) {
+                a = new Node(list.get(i), a);
+                u++;
+            }
+        }
+        this.front = f;
+        this.back = null;
+        this.agenda = a;
+        this.pending = null;
+        this.appended = 0;
+        this.size = list.size();
+        this.unexpanded = u;
+        this.depth = 0;
+        this.index = c;
+    }
+
+    private Branch(Node front, Node back, Node agenda, Heap pending, long appended, int size, int unexpanded, int depth, ClosureIndex index) {
+        this.front = front;
+        this.back = back;
+        this.agenda = agenda;
+        this.pending = pending;
+        this.appended = appended;
+        this.size = size;
+        this.unexpanded = unexpanded;
+        this.depth = depth;
+        this.index = index;
+    }
+
+    /**
+     * Returns the number of formulas in this branch.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of formulas not yet expanded in this branch.
+     * @return
+     */
+    public int countUnexpanded() {
+        return unexpanded;
+    }
+
+    /**
+     * Returns the depth of this branch in the tableau: the number of rules
+     * which extended or split the branch since the root, whatever the number
+     * of formulas they added.
+     * @return
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns this branch one level deeper, once a rule is applied to it.
+     * @return the updated branch
+     */
+    public Branch descend() {
+        return new Branch(front, back, agenda, pending, appended, size, unexpanded, depth + 1, index);
+    }
+
+    /**
+     * Tests whether this branch is closed by the closure rules.
+     * @return
+     */
+    public boolean isClosed() {
+        return index.isClosed();
+    }
+
+    /**
+     * Returns the first formula of this branch that has not been expanded.
+     * @return the first unexpanded formula, or <code>null</code> if all are expanded
+     */
+    public Formula firstUnexpanded() {
+        if (agenda != null) {
+            return agenda.f;
+        } else if (pending != null) {
+            return pending.f;
+        }
+        return null;
+    }
+
+    /**
+     * Marks the first unexpanded formula of this branch as expanded.
+     * @return the updated branch
+     */
+    public Branch expandFirst() {
+        if (agenda != null) {
+            return new Branch(front, back, agenda.next, pending, appended, size, unexpanded - 1, depth, index);
+        } else if (pending != null) {
+            return new Branch(front, back, agenda, Heap.merge(pending.left, pending.right), appended, size, unexpanded - 1, depth, index);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a formula at the end of this branch.
+     * @param f
+     * @return the updated branch
+     */
+    public Branch append(Formula f) {
+        return append(f, 0);
+    }
+
+    /**
+     * Adds a formula at the end of this branch. Unexpanded appended formulas
+     * are expanded by increasing priority, and in order for equal priorities.
+     * @param f
+     * @param priority
+     * @return the updated branch
+     */
+    public Branch append(Formula f, int priority) {
+        Heap p = pending;
+        int u = unexpanded;
+        if (!f.isExpanded()) {
+            p = Heap.merge(p, new Heap(priority, appended, f));
+            u++;
+        }
+        return new Branch(front, new Node(f, back), agenda, p, appended + 1, size + 1, u, depth, index.add(f));
+    }
+
+    /**
+     * Inserts a list of formulas, in order, at the beginning of this branch.
+     * @param l
+     * @return the updated branch
+     */
+    public Branch prependAll(ArrayList<Formula> l) {
+        Node f = front;
+        Node a = agenda;
+        int u = unexpanded;
+        for (int i = l.size() - 1; i >= 0; i--) {
+            f = new Node(l.get(i), f);
+            if (!l.get(i).isExpanded()) {
+                a = new Node(l.get(i), a);
+                u++;
+            }
+        }
+        return new Branch(f, back, a, pending, appended, size + l.size(), u, depth, index.addAll(l));
+    }
+
+    /**
+     * Returns the formulas of this branch in order.
+     * @return
+     */
+    public ArrayList<Formula> getFormulas() {
+        ArrayList<Formula> list = new ArrayList<Formula>(size);
+        for (Node n = front; n != null; n = n.next) {
+            list.add(n.f);
+        }
+        int start = list.size();
+        for (Node n = back; n != null; n = n.next) {
+            list.add(n.f);
+        }
+        //back is stored most recent first
+        for (int i = start, j = list.size() - 1; i < j; i++, j--) {
+            Formula tmp = list.get(i);
+            list.set(i, list.get(j));
+            list.set(j, tmp);
+        }
+        return list;
+    }
+
+    /**
+     * Tests whether adding a formula would close this branch.
+     * @param f
+     * @return
+     */
+    public boolean closes(Formula f) {
+        return index.isClosed() || index.add(f).isClosed();
+    }
+
+    /**
+     * Returns a key identifying the formulas of this branch and which of them
+     * are expanded, regardless of their order.
+     * @return a key, or <code>null</code> if some formula was not interned
+     */
+    public BranchKey key() {
+        ArrayList<Formula> unexpandedList = new ArrayList<Formula>(unexpanded);
+        for (Node n = agenda; n != null; n = n.next) {
+            unexpandedList.add(n.f);
+        }
+        ArrayList<Heap> stack = new ArrayList<Heap>();
+        if (pending != null) {
+            stack.add(pending);
+        }
+        while (!stack.isEmpty()) {
+            Heap h = stack.remove(stack.size() - 1);
+            unexpandedList.add(h.f);
+            if (h.left != null) stack.add(h.left);
+            if (h.right != null) stack.add(h.right);
+        }
+        return BranchKey.of(getFormulas(), unexpandedList);
+    }
+
+    /**
+     * Cell of a persistent singly linked list.
+     */
+    private static final class Node {
+
+        final Formula f;
+        final Node next;
+
+        Node(Formula f, Node next) {
+            this.f = f;
+            this.next = next;
+        }
+    }
+
+    /**
+     * Persistent leftist heap ordered by <code>priority</code>, then <code>key</code>.
+     */
+    private static final class Heap {
+
+        final int priority;
+        final long key;
+        final Formula f;
+        final Heap left;
+        final Heap right;
+        final int dist;         //length of the right spine
+
+        Heap(int priority, long key, Formula f) {
+            this(priority, key, f, null, null);
+        }
+
+        private Heap(int priority, long key, Formula f, Heap left, Heap right) {
+            this.priority = priority;
+            this.key = key;
+            this.f = f;
+            //the child with the shorter right spine goes to the right
+            if (dist(left) < dist(right)) {
+                this.left = right;
+                this.right = left;
+            } else {
+                this.left = left;
+                this.right = right;
+            }
+            this.dist = dist(this.right) + 1;
+        }
+
+        static int dist(Heap h) {
+            return h == null ? 0 : h.dist;
+        }
+
+        static Heap merge(Heap h1, Heap h2) {
+            if (h1 == null) return h2;
+            if (h2 == null) return h1;
+            if (h2.priority < h1.priority || (h2.priority == h1.priority && h2.key < h1.key)) {
+                Heap tmp = h1;
+                h1 = h2;
+                h2 = tmp;
+            }
+            return new Heap(h1.priority, h1.key, h1.f, h1.left, merge(h1.right, h2));
+        }
+    }
+}
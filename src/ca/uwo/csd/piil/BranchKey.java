@@ -0,0 +1,124 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * <code>BranchKey</code> identifies the content of a tableau branch regardless
+ * of the order of its formulas: the multiset of its formulas and the multiset
+ * of its unexpanded formulas. A formula is described by its structural id in a
+ * <code>FormulaFactory</code>, its turnstile, type of knowledge, quantifier and
+ * justification prefix. Prefixes are compared by identity, so two branches with
+ * equal but separately built prefixes get different keys; equal keys always
+ * mean equal branches up to order. Formulas are sorted by their description,
+ * prefixes by their serial number, so the key does not depend on the order of
+ * the formulas.
+ * @author Syeed Ibn Faiz
+ */
+final class BranchKey {
+
+    private final int size;                         //formulas of the branch, the rest are unexpanded
+    private final long codes[];
+    private final JustificationPrefix prefixes[];
+    private final int hash;
+
+    private BranchKey(int size, long codes[], JustificationPrefix prefixes[]) {
+        this.size = size;
+        this.codes = codes;
+        this.prefixes = prefixes;
+        int h = size;
+        for (int i = 0; i < codes.length; i++) {
+            h = 31 * h + (int) (codes[i] ^ (codes[i] >>> 32));
+            long serial = JustificationPrefix.serial(prefixes[i]);
+            h = 31 * h + (int) (serial ^ (serial >>> 32));
+        }
+        this.hash = h;
+    }
+
+    /**
+     * Builds the key of a branch.
+     * @param all the formulas of the branch
+     * @param unexpanded its unexpanded formulas
+     * @return the key, or <code>null</code> if some formula was not built by a <code>FormulaFactory</code>
+     */
+    static BranchKey of(ArrayList<Formula> all, ArrayList<Formula> unexpanded) {
+        ArrayList<Item> items = new ArrayList<Item>(all.size() + unexpanded.size());
+        if (!addAll(items, all)) {
+            return null;
+        }
+        addAll(items, unexpanded);
+        Collections.sort(items.subList(0, all.size()), ORDER);
+        Collections.sort(items.subList(all.size(), items.size()), ORDER);
+
+        long codes[] = new long[items.size()];
+        JustificationPrefix prefixes[] = new JustificationPrefix[items.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = items.get(i).code;
+            prefixes[i] = items.get(i).prefix;
+        }
+        return new BranchKey(all.size(), codes, prefixes);
+    }
+
+    private static boolean addAll(ArrayList<Item> items, ArrayList<Formula> l) {
+        for (Formula f : l) {
+            if (f.id < 0) {
+                return false;
+            }
+            //turnstiles, types of knowledge and quantifiers are distinct in their low bits
+            long code = ((long) f.id << 32) | ((f.getSign() & 0xFF) << 16)
+                    | ((f.getKnowledgeType() & 0xFF) << 8) | (f.getQuantifier() & 0x7F);
+            items.add(new Item(code, f.getJPrefix()));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof BranchKey)) return false;
+        BranchKey k = (BranchKey) o;
+        if (hash != k.hash || size != k.size || !Arrays.equals(codes, k.codes)) return false;
+        for (int i = 0; i < prefixes.length; i++) {
+            if (prefixes[i] != k.prefixes[i]) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * A formula of the key.
+     */
+    private static final class Item {
+
+        final long code;
+        final JustificationPrefix prefix;
+
+        Item(long code, JustificationPrefix prefix) {
+            this.code = code;
+            this.prefix = prefix;
+        }
+    }
+
+    private static final Comparator<Item> ORDER = new Comparator<Item>() {
+
+        @Override
+        public int compare(Item i1, Item i2) {
+            if (i1.code != i2.code) {
+                return i1.code < i2.code ? -1 : 1;
+            }
+            long s1 = JustificationPrefix.serial(i1.prefix);
+            long s2 = JustificationPrefix.serial(i2.prefix);
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
+}
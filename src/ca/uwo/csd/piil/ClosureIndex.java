@@ -0,0 +1,327 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+
+/**
+ * <code>ClosureIndex</code> detects the closure of a tableau branch incrementally.
+ * Every formula added to a branch is checked against the formulas already on it
+ * which could close the branch together with it:
+ * <ul>
+ * <li>atoms, for the generalized closure rule 8.3.4: atoms without justification
+ * prefix in a <code>LiteralStore</code>, the others by propositional variable id,</li>
+ * <li>generic justification formulas and hard formulas of rank 0, by structural
+ * id (see <code>FormulaFactory</code>), for Theorems 8.3.7 and 8.3.8.</li>
+ * </ul>
+ * A branch is closed as soon as one of these rules fires, so its subtree need
+ * not be expanded at all. Like <code>Branch</code>, an index is immutable and
+ * <code>add</code> returns a new one sharing structure with the old.
+ * @author Syeed Ibn Faiz
+ */
+class ClosureIndex {
+
+    /* Shortcuts */
+    private static final int T = Formula.TRUE;                  //0000
+    private static final int NT = Formula.NOT_TRUE;             //0010
+    private static final int PT = Formula.POT_TRUE;             //0100
+    private static final int NPT = Formula.NOT_POT_TRUE;        //0110
+    private static final int H = Formula.HARD;
+    private static final int S = Formula.SOFT;
+    private static final int G = Formula.GENJUST;
+
+    /* Turnstiles contradicting each turnstile, indexed by turnstile / 2 */
+    private static final int CONFLICTS[][] = {
+        {NT, NPT},      //T
+        {T},            //NT
+        {NPT},          //PT
+        {PT, T}         //NPT
+    };
+
+    public static final ClosureIndex EMPTY = new ClosureIndex(LiteralStore.EMPTY, new PersistentIntMap<Entry>(),
+            new PersistentIntMap<Entry>(), new PersistentIntMap<Entry>(), new PersistentIntMap<Entry>(), false);
+    private static final ClosureIndex CLOSED = new ClosureIndex(null, null, null, null, null, true);
+
+    private final LiteralStore literals;            //atoms without justification prefix
+    private final PersistentIntMap<Entry> atoms;    //atoms with justification prefix by propositional variable
+    private final PersistentIntMap<Entry> generic;  //generic justification formulas by id
+    private final PersistentIntMap<Entry> parents;  //generic -, & and -> formulas by id of the children the rules look at
+    private final PersistentIntMap<Entry> hard;     //hard formulas of rank 0 by id
+    private final boolean closed;
+
+    private ClosureIndex(LiteralStore literals, PersistentIntMap<Entry> atoms, PersistentIntMap<Entry> generic,
+            PersistentIntMap<Entry> parents, PersistentIntMap<Entry> hard, boolean closed) {
+        this.literals = literals;
+        this.atoms = atoms;
+        this.generic = generic;
+        this.parents = parents;
+        this.hard = hard;
+        this.closed = closed;
+    }
+
+    /**
+     * Tests whether the formulas added so far close the branch.
+     * @return
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the index of a branch extended with a formula.
+     * @param f a formula added to the branch
+     * @return the updated index
+     */
+    public ClosureIndex add(Formula f) {
+        if (closed) return this;
+
+        if (f.getType() == Formula.ATOMIC) {
+            if (f.getVarId() == SymbolTable.FALSE_ID && (f.getSign() != NPT && f.getSign() != NT)) {
+                return CLOSED;
+            } else if (f.getVarId() == SymbolTable.TRUE_ID && (f.getSign() != T && f.getSign() != PT)) {
+                return CLOSED;
+            }
+        } else if (f.getCntv() == '@' && f.getSign() == NPT) {
+            //NPT bot(a) -> closed
+            return CLOSED;
+        }
+
+        LiteralStore newLiterals = literals;
+        PersistentIntMap<Entry> newAtoms = atoms;
+        PersistentIntMap<Entry> newGeneric = generic;
+        PersistentIntMap<Entry> newParents = parents;
+        PersistentIntMap<Entry> newHard = hard;
+
+        if (isAtom(f)) {
+            int var = f.getVarId();
+            int sign = f.getSign();
+            Entry bucket = atoms.get(var);
+            for (Entry e = bucket; e != null; e = e.next) {
+                if (closesAtoms(f, e.f) || closesAtoms(e.f, f)) {
+                    return CLOSED;
+                }
+            }
+            if (f.getJPrefix() == null) {
+                if (LiteralStore.isStorable(sign)) {            //other turnstiles never contradict
+                    for (int c : CONFLICTS[sign / 2]) {         //8.3.4 (i) with an atom without prefix
+                        if (literals.contains(c, var)) {
+                            return CLOSED;
+                        }
+                    }
+                    newLiterals = literals.add(f.getKnowledgeType(), sign, var);
+                }
+            } else {
+                if (LiteralStore.isStorable(sign)) {            //8.3.4 (ii), (iii) f extends an atom without prefix
+                    for (int c : CONFLICTS[sign / 2]) {
+                        if (f.getKnowledgeType() == S ? literals.contains(c, var)
+                                : (literals.contains(H, c, var) || literals.contains(Formula.JUST, c, var))) {
+                            return CLOSED;
+                        }
+                    }
+                }
+                newAtoms = atoms.put(var, new Entry(f, bucket));
+            }
+        }
+        if (f.getKnowledgeType() == H && f.getRank() == 0) {
+            //Theorem 8.3.7 and its variant: generic f or generic -f
+            if (closesWithAny(f, generic.get(f.getId())) || closesWithAny(f, parents.get(f.getId()))) {
+                return CLOSED;
+            }
+            newHard = hard.put(f.getId(), new Entry(f, hard.get(f.getId())));
+        }
+        if (f.getQuantifier() == G) {
+            //Theorem 8.3.7 and its variant
+            if (closesWithAny(f, hard.get(f.getId()))
+                    || (f.getCntv() == '-' && closesWithAny(f, hard.get(f.getChild(0).getId())))) {
+                return CLOSED;
+            }
+            //Theorem 8.3.8
+            if (closesWithAny(f, generic.get(f.getId())) || closesWithAny(f, parents.get(f.getId()))) {
+                return CLOSED;
+            }
+            if (f.getCntv() == '&' && (closesWithAny(f, generic.get(f.getChild(0).getId()))
+                    || closesWithAny(f, generic.get(f.getChild(1).getId())))) {
+                return CLOSED;
+            } else if (f.getCntv() == '>' && closesWithAny(f, generic.get(f.getChild(1).getId()))) {
+                return CLOSED;
+            }
+            newGeneric = generic.put(f.getId(), new Entry(f, generic.get(f.getId())));
+            if (f.getCntv() == '-') {
+                newParents = addEntry(newParents, f.getChild(0).getId(), f);
+            } else if (f.getCntv() == '&') {
+                newParents = addEntry(newParents, f.getChild(0).getId(), f);
+                if (f.getChild(1).getId() != f.getChild(0).getId()) {
+                    newParents = addEntry(newParents, f.getChild(1).getId(), f);
+                }
+            } else if (f.getCntv() == '>') {
+                newParents = addEntry(newParents, f.getChild(1).getId(), f);
+            }
+        }
+        return new ClosureIndex(newLiterals, newAtoms, newGeneric, newParents, newHard, false);
+    }
+
+    private static PersistentIntMap<Entry> addEntry(PersistentIntMap<Entry> map, int key, Formula f) {
+        return map.put(key, new Entry(f, map.get(key)));
+    }
+
+    /**
+     * Tests whether a formula closes a branch together with one of a list of
+     * formulas, taking them in either order.
+     * @param f
+     * @param list
+     * @return
+     */
+    private static boolean closesWithAny(Formula f, Entry list) {
+        for (Entry e = list; e != null; e = e.next) {
+            if (closesGeneric(f, e.f) || closesGeneric(e.f, f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of a branch extended with a list of formulas.
+     * @param l formulas added to the branch
+     * @return the updated index
+     */
+    public ClosureIndex addAll(ArrayList<Formula> l) {
+        ClosureIndex index = this;
+        for (int i = 0; i < l.size() && !index.closed; i++) {
+            index = index.add(l.get(i));
+        }
+        return index;
+    }
+
+    /**
+     * Tests whether a formula takes part in the closure rules for atoms, i.e. it is
+     * an atomic formula other than True and False and not a canonical justification formula.
+     * @param f
+     * @return
+     */
+    static boolean isAtom(Formula f) {
+        return f.getType() == Formula.ATOMIC && f.getQuantifier() == Formula.NONE
+                && f.getVarId() != SymbolTable.TRUE_ID && f.getVarId() != SymbolTable.FALSE_ID;
+    }
+
+    /**
+     * Generalized closure rule 8.3.4 for two atoms of the same variable.
+     * @param a1
+     * @param a2
+     * @return true if <code>a1</code> and <code>a2</code> close a branch
+     */
+    private static boolean closesAtoms(Formula a1, Formula a2) {
+        int sign1 = a1.getSign();
+        int sign2 = a2.getSign();
+
+        if (prefixMatches(a1.getJPrefix(), a2.getJPrefix())) {              //8.3.4 (i) generalized closure rule
+            return conflicts(sign1, sign2);
+
+        } else if (prefixEndsWith(a2.getJPrefix(), a1.getJPrefix())) {
+            if (a1.getKnowledgeType() != S && a2.getKnowledgeType() != S) { //8.3.4 (ii) jKnowledge extends hKnowledge
+                return conflicts(sign1, sign2);
+
+            } else if (a2.getKnowledgeType() == S) {                        //8.3.4 (iii) sKnowledge extends hKnowledge
+                return conflicts(sign1, sign2);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closure rules involving the generic operator.
+     * @param f1
+     * @param f2
+     * @return true if <code>f1</code> and <code>f2</code> close a branch
+     */
+    private static boolean closesGeneric(Formula f1, Formula f2) {
+        int sign1 = f1.getSign();
+        int sign2 = f2.getSign();
+
+        if ((f1.getKnowledgeType()==H && f1.getRank() == 0) && f2.getQuantifier()==G && equals(f1, f2)) {  //Theorem 8.3.7
+            return conflicts(sign1, sign2);
+
+        } else if ((f1.getKnowledgeType()==H && f1.getRank() == 0) && f2.getQuantifier()==G && (f2.getCntv()=='-' && equals(f1, f2.getChild(0)))) {  //Theorem 8.3.7 equivalent variant
+            return (sign1==NPT && (sign2==NPT || sign2==NT)) || (sign1==T && (sign2==T || sign2==PT));
+
+        } else if (f1.getQuantifier() == G && f2.getQuantifier() == G) {    //Theorem 8.3.8
+            if (equals(f1, f2) && conflicts(sign1, sign2)) {
+                return true;
+            } else if (f1.getCntv()=='&' && (equals(f1.getChild(0), f2) || equals(f1.getChild(1), f2)) && sign1==T && sign2==NPT) {
+                return true;
+            } else if (f1.getCntv()=='>' && equals(f1.getChild(1), f2)) {
+                return (sign1==NPT&&sign2==PT)||(sign1==NT&&sign2==T)||(sign1==NPT&&sign2==T);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether two turnstiles contradict each other.
+     * @param sign1
+     * @param sign2
+     * @return
+     */
+    private static boolean conflicts(int sign1, int sign2) {
+        return (sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT);
+    }
+
+    /**
+     * Tests whether two given formulas are identical.
+     * @param f1
+     * @param f2
+     * @return
+     */
+    static boolean equals(Formula f1, Formula f2) {
+        if (Formula.sameFactory(f1, f2)) return f1.node == f2.node;
+        if (f1.getRank() != f2.getRank()) return false;
+        else if (f1.getCntv() != f2.getCntv()) return false;
+        else if (f1.getType() == Formula.COMP_BINARY){
+            return (equals(f1.getChild(0), f2.getChild(0)) && equals(f1.getChild(1), f2.getChild(1)));
+        }else if (f1.getType() == Formula.COMP_UNARY){
+            return (equals(f1.getChild(0), f2.getChild(0)));
+        } else {
+            return (f1.getVar().equals(f2.getVar()));
+        }
+    }
+
+    /**
+     * Tests whether two justification prefixes match or not.
+     * @param j1
+     * @param j2
+     * @return true if <code>j1</code> matches with <code>j2</code>
+     */
+    static boolean prefixMatches(JustificationPrefix j1, JustificationPrefix j2) {
+        return JustificationPrefix.matches(j1, j2);
+    }
+
+    /**
+     * Tests whether one justification prefix ends with another one.
+     * @param jp
+     * @param e
+     * @return true if <code>e</code> is a suffix of <code>jp</code>
+     */
+    static boolean prefixEndsWith(JustificationPrefix jp, JustificationPrefix e) {
+        if (e == null) return true;
+        if (JustificationPrefix.size(jp) < JustificationPrefix.size(e)) return false;
+
+        return JustificationPrefix.matches(JustificationPrefix.ancestor(jp, JustificationPrefix.size(e)), e);
+    }
+
+    /**
+     * Cell of a persistent list of formulas.
+     */
+    private static final class Entry {
+
+        final Formula f;
+        final Entry next;
+
+        Entry(Formula f, Entry next) {
+            this.f = f;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <code>ClosureMemo</code> remembers the branches of a tableau whose whole
+ * subtree turned out to be closed, so that another branch with the same
+ * content, reached by applying rules in another order, is not expanded again.
+ * Branches are identified by their <code>BranchKey</code>. The memo holds a
+ * bounded number of keys; once full, new keys are not recorded. It can be
+ * shared by the tasks of a parallel search.
+ * @author Syeed Ibn Faiz
+ */
+class ClosureMemo {
+
+    private final int capacity;
+    private final ConcurrentHashMap<BranchKey, Boolean> closed = new ConcurrentHashMap<BranchKey, Boolean>();
+
+    /**
+     * Constructs an empty memo.
+     * @param capacity maximum number of keys, 0 to remember nothing
+     */
+    public ClosureMemo(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Tests whether keys are recorded at all.
+     * @return
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Returns the key of a branch if the memo is enabled.
+     * @param branch
+     * @return a key, or <code>null</code> if the branch can not be looked up
+     */
+    public BranchKey key(Branch branch) {
+        return capacity > 0 ? branch.key() : null;
+    }
+
+    /**
+     * Tests whether the subtree of a branch is known to be closed.
+     * @param key a key, may be <code>null</code>
+     * @return
+     */
+    public boolean isClosed(BranchKey key) {
+        return key != null && closed.containsKey(key);
+    }
+
+    /**
+     * Records a branch whose subtree is closed.
+     * @param key a key, may be <code>null</code>
+     */
+    public void addClosed(BranchKey key) {
+        if (key != null && closed.size() < capacity) {
+            closed.put(key, Boolean.TRUE);
+        }
+    }
+}
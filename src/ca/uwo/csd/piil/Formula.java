@@ -43,9 +43,14 @@ public class Formula {
     private char cntv;                      //connective
     private boolean expanded;               //marked if used
     private String propVar;                 //stores propositional variable
+    int varId;                              //id of propVar in a SymbolTable
     private ArrayList<Formula> childList;   //list of chindren    
-    ArrayList<Justification> justPrefix;    //justification prefix
+    JustificationPrefix justPrefix;         //justification prefix, shared
     int qn;                                 //quantifier
+    private int hash;                       //structural hash, ignores case of variables
+    int id = -1;                            //structural id given by a FormulaFactory
+    Formula node;                           //shared node of this structure in a FormulaFactory
+    FormulaFactory factory;                 //set only for nodes
 
     /**
      * Constructs a <code>Formula</code> containing only a propositional variable.
@@ -57,12 +62,14 @@ public class Formula {
         this.type = ATOMIC;
         this.knowledge = UNKNOWN;
         this.propVar = s;
+        this.varId = SymbolTable.reservedId(s);
         this.childList = null;
         expanded = false;
         rank = 0;
 
         justPrefix = null;
         qn = NONE;
+        hash = FormulaFactory.fold(s).hashCode();
     }
 
     /**
@@ -75,9 +82,13 @@ public class Formula {
         this.type = old.type;
         this.knowledge = old.knowledge;
         this.propVar = old.propVar;        
+        this.varId = old.varId;
         this.rank = old.rank;
         this.qn = old.qn;
         expanded = old.expanded;
+        this.hash = old.hash;
+        this.id = old.id;
+        this.node = old.node;
         
         this.childList = null;
         if (old.childList != null) {
@@ -86,13 +97,7 @@ public class Formula {
                 this.childList.add(new Formula(f));
             }
         }
-        this.justPrefix = null;
-        if (old.justPrefix != null) {
-            this.justPrefix = new ArrayList<Justification>();
-            for (Justification j : old.justPrefix) {
-                this.justPrefix.add(j);
-            }
-        }
+        this.justPrefix = old.justPrefix;       //immutable
         
         
     }
@@ -107,6 +112,7 @@ public class Formula {
         this.type = COMP_UNARY;
         this.knowledge = UNKNOWN;
         this.propVar = null;
+        this.varId = SymbolTable.UNKNOWN_ID;
         this.childList = new ArrayList<Formula>();
         this.childList.add(f);
         expanded = false;
@@ -114,6 +120,7 @@ public class Formula {
 
         justPrefix = null;
         qn = NONE;
+        hash = 31 * cntv + f.hash;
     }
 
     /**
@@ -128,6 +135,7 @@ public class Formula {
         this.type = COMP_BINARY;
         this.knowledge = UNKNOWN;
         this.propVar = null;
+        this.varId = SymbolTable.UNKNOWN_ID;
         this.childList = new ArrayList<Formula>();
         this.childList.add(f1);
         this.childList.add(f2);
@@ -141,6 +149,7 @@ public class Formula {
 
         justPrefix = null;
         qn = NONE;
+        hash = 31 * (31 * cntv + f1.hash) + f2.hash;
     }
 
     /**
@@ -156,12 +165,16 @@ public class Formula {
         this.type = old.type;
         this.knowledge = old.knowledge;
         this.propVar = old.propVar;
+        this.varId = old.varId;
         this.childList = old.childList;
         this.rank = old.rank;
         expanded = false;
 
         justPrefix = null; //handle with caution
         this.qn = old.qn;
+        this.hash = old.hash;
+        this.id = old.id;
+        this.node = old.node;
     }
 
     /**
@@ -194,11 +207,9 @@ public class Formula {
      * @param qn quantifier
      * @param jp justification prefix for this formula
      */
-    public Formula(int sign, int knowledge, Formula old, int qn, ArrayList<Justification> jp) {
+    public Formula(int sign, int knowledge, Formula old, int qn, JustificationPrefix jp) {
         this(sign, knowledge, old, qn);
-        if (jp != null ) {
-            this.justPrefix = new ArrayList<Justification>(jp);
-        }
+        this.justPrefix = jp;
     }
 
     /**
@@ -208,18 +219,16 @@ public class Formula {
      * @param old a <code>Formula</code>
      * @param jp justification prefix for this formula
      */
-    public Formula(int sign, int knowledge, Formula old, ArrayList<Justification> jp) {
+    public Formula(int sign, int knowledge, Formula old, JustificationPrefix jp) {
         this(sign, knowledge, old);
-        if (jp != null ) {
-            this.justPrefix = new ArrayList<Justification>(jp);
-        }
+        this.justPrefix = jp;
     }
 
     /**
      * Returns the justification prefix of this formula
-     * @return a list of <code>Justification</code>
+     * @return a prefix, <code>null</code> if empty
      */
-    public ArrayList<Justification> getJPrefix() {
+    public JustificationPrefix getJPrefix() {
         return justPrefix;
     }
     /**
@@ -227,10 +236,7 @@ public class Formula {
      * @param j a <code>Justification</code> to be added.
      */
     public void addJustification(Justification j) {
-        if (this.justPrefix == null) {
-            this.justPrefix = new ArrayList<Justification>();
-        }
-        this.justPrefix.add(j);
+        this.justPrefix = JustificationPrefix.extend(this.justPrefix, j);
     }
     /**
      * Returns the quantifier for this canonical justification.
@@ -282,6 +288,26 @@ public class Formula {
     public String getVar() {
         return propVar;
     }
+    /**
+     * Returns the id of the propositional variable. Atoms built by the same
+     * <code>FormulaFactory</code> have the same variable if and only if they have
+     * the same id. <code>True</code> and <code>False</code> always have the
+     * reserved ids of <code>SymbolTable</code>.
+     * @return
+     */
+    public int getVarId() {
+        return varId;
+    }
+    /**
+     * Tests whether two atoms have the same propositional variable, ignoring case.
+     * @param f1
+     * @param f2
+     * @return
+     */
+    static boolean sameVar(Formula f1, Formula f2) {
+        if (sameFactory(f1, f2)) return f1.varId == f2.varId;
+        return f1.propVar.equalsIgnoreCase(f2.propVar);
+    }
     /**
      * Returns the type of this <code>Formula</code>
      * @return
@@ -336,16 +362,41 @@ public class Formula {
             return null;
         }
     }
+    /**
+     * Returns the structural id of this formula. Formulas built on nodes of the
+     * same <code>FormulaFactory</code> have the same id if and only if they have
+     * the same structure, ignoring the case of variables.
+     * @return the id, or -1 if this formula was not built by a factory
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns a hash of the structure of this formula. Turnstiles, knowledge
+     * types and prefixes are not taken into account. This is not
+     * <code>hashCode</code>: formulas are not equal by structure as objects.
+     * @return
+     */
+    public int structureHash() {
+        return hash;
+    }
+
+    /**
+     * Tests whether two formulas are built on nodes of the same <code>FormulaFactory</code>,
+     * in which case their structures can be compared by id.
+     * @param f1
+     * @param f2
+     * @return
+     */
+    static boolean sameFactory(Formula f1, Formula f2) {
+        return f1.node != null && f2.node != null && f1.node.factory == f2.node.factory;
+    }
+
     public boolean equals(Formula f) {
         if (this.type != f.type || this.sign != f.sign || this.knowledge != f.knowledge) return false;
-        if (this.justPrefix != null) {
-            if (f.justPrefix == null || (this.justPrefix.size() != f.justPrefix.size())) return false;
-            for (int i = 0; i < this.justPrefix.size(); i++) {
-                Justification j1 = this.justPrefix.get(i);
-                Justification j2 = f.justPrefix.get(i);
-                if (!j1.equals(j2)) return false;
-            }
-        }
+        if (this.justPrefix != null && !JustificationPrefix.matches(this.justPrefix, f.justPrefix)) return false;
+        if (sameFactory(this, f)) return this.id == f.id;       //subformulas of nodes are unsigned
         if (this.type == ATOMIC) return this.propVar.equalsIgnoreCase(f.propVar);
         else if (this.cntv == f.cntv) {
             for (int i = 0; i < this.childList.size(); i++) {
@@ -361,66 +412,6 @@ public class Formula {
      */
     @Override
     public String toString() {
-        String s = "";
-        String ionSymbols[] = {"♢","♡","♠","O","♣", "•", "∆", "∇", "⋈"};
-        //s += "<" + this.rank + "> ";
-        if (this.justPrefix != null) {
-            for (int i = justPrefix.size() - 1; i >= 0; i--) {
-                s += justPrefix.get(i);
-            }
-            s += " ";
-        }
-
-        if (this.knowledge == HARD || this.knowledge == JUST) {
-            switch (this.sign) {
-                case TRUE: s += "⊨ ";           break;
-                case NOT_TRUE: s += "⊭ ";      break;
-                case POT_TRUE: s += "⊫ ";      break;
-                case NOT_POT_TRUE: s += "⊯ ";   break;
-            }
-        } else if (this.knowledge == SOFT) {
-            switch (this.sign) {
-                case TRUE: s += "⊨₅ ";           break;
-                case NOT_TRUE: s += "⊭₅ ";      break;
-                case POT_TRUE: s += "⊫₅ ";      break;
-                case NOT_POT_TRUE: s += "⊯₅ ";   break;
-            }
-        } /*else if (this.knowledge == JUST) {
-            switch (this.sign) {
-                case TRUE: s += "+* ";           break;
-                case NOT_TRUE: s += "+/* ";      break;
-                case POT_TRUE: s += "-/* ";      break;
-                case NOT_POT_TRUE: s += "-* ";   break;
-            }
-        }*/
-
-        if (this.type == ATOMIC) {
-            s += this.propVar;
-        }
-        else if (this.type == COMP_UNARY) {
-            if (this.cntv == '#') {
-                s += "~'(" + childList.get(0) + ")";
-            } else if (this.cntv == '@') {
-                s += "bot(" + childList.get(0) + ")";
-            } else {
-                s += this.cntv + "(" + childList.get(0) + ")";
-            }
-
-        }
-        else {
-            if (this.cntv == '>') {
-                s += "(" + childList.get(0).toString() + " -> " + childList.get(1).toString() + ")";
-            } else if (Character.isDigit(this.cntv)) {
-                s += ionSymbols[this.cntv-'0'] + "(" + childList.get(0).toString() + ", " + childList.get(1).toString() + ")";
-            } else if (this.cntv == '*') {
-                s += "*(" + childList.get(0).toString() + ", " + childList.get(1).toString() + ")";
-            } else {
-                s += "(" + childList.get(0).toString() + " " + this.cntv + " " + childList.get(1).toString() + ")";
-            }
-
-        }
-        if (this.qn == UNIV) s += "∀";
-        else if (this.qn == EXIST) s += "∃";
-        return s;
+        return ResultWriter.appendFormula(new StringBuilder(), this, false).toString();
     }
 }
@@ -0,0 +1,222 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * <code>FormulaFactory</code> builds unsigned formulas by hash-consing: a
+ * structure is created only once and shared by every formula containing it,
+ * so a set of formulas becomes a DAG. Every node gets an integer id, equal for
+ * structures that only differ in the case of their propositional variables,
+ * and a precomputed hash. For two formulas of the same factory
+ * <ul>
+ * <li>the structures are identical if and only if their nodes are the same object,</li>
+ * <li>the structures are equal ignoring case if and only if their ids are equal.</li>
+ * </ul>
+ * Signed formulas are built on top of these nodes with the signed
+ * <code>Formula</code> constructors and keep the id of their node. Nodes are
+ * shared and must not be modified.
+ * @author Syeed Ibn Faiz
+ */
+public class FormulaFactory {
+
+    private SymbolTable symbols;                                            //ids of variables
+    private HashMap<Key, Formula> nodes = new HashMap<Key, Formula>();      //structure -> node
+    private HashMap<Key, Integer> ids = new HashMap<Key, Integer>();        //structure ignoring case -> id
+    private IdentityHashMap<Formula, Formula> interned = new IdentityHashMap<Formula, Formula>();   //foreign formula -> node
+
+    /**
+     * Constructs a factory with its own symbol table.
+     */
+    public FormulaFactory() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * Constructs a factory giving variables the ids of a symbol table.
+     * @param symbols
+     */
+    public FormulaFactory(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Returns the symbol table of the variables of this factory.
+     * @return
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Returns the node of a propositional variable.
+     * @param s name of a propositional variable
+     * @return
+     */
+    public synchronized Formula atom(String s) {
+        Key key = new Key((char) 0, s, null, null);
+        Formula f = nodes.get(key);
+        if (f == null) {
+            int varId = symbols.getId(s);
+            f = new Formula(s);
+            f.varId = varId;
+            f = register(key, f, new Key((char) 0, null, varId, -1));
+        }
+        return f;
+    }
+
+    /**
+     * Returns the node of a unary connective applied to a formula.
+     * @param cntv a unary connective
+     * @param f a <code>Formula</code>
+     * @return
+     */
+    public synchronized Formula unary(char cntv, Formula f) {
+        f = intern(f);
+        Key key = new Key(cntv, null, f, null);
+        Formula g = nodes.get(key);
+        if (g == null) {
+            g = register(key, new Formula(cntv, f), new Key(cntv, null, f.getId(), -1));
+        }
+        return g;
+    }
+
+    /**
+     * Returns the node of a binary connective applied to two formulas.
+     * @param cntv a binary connective
+     * @param f1 a <code>Formula</code>
+     * @param f2 a <code>Formula</code>
+     * @return
+     */
+    public synchronized Formula binary(char cntv, Formula f1, Formula f2) {
+        f1 = intern(f1);
+        f2 = intern(f2);
+        Key key = new Key(cntv, null, f1, f2);
+        Formula g = nodes.get(key);
+        if (g == null) {
+            g = register(key, new Formula(cntv, f1, f2), new Key(cntv, null, f1.getId(), f2.getId()));
+        }
+        return g;
+    }
+
+    /**
+     * Returns the node of this factory with the same structure as a given formula.
+     * Turnstiles, knowledge types, quantifiers and prefixes are ignored.
+     * @param f a formula built by any means
+     * @return
+     */
+    public synchronized Formula intern(Formula f) {
+        if (f.node != null && f.node.factory == this) {
+            return f.node;
+        }
+        Formula source = f.node != null ? f.node : f;
+        Formula g = interned.get(source);
+        if (g == null) {
+            if (f.getType() == Formula.ATOMIC) {
+                g = atom(f.getVar());
+            } else if (f.getType() == Formula.COMP_UNARY) {
+                g = unary(f.getCntv(), f.getChild(0));
+            } else {
+                g = binary(f.getCntv(), f.getChild(0), f.getChild(1));
+            }
+            interned.put(source, g);
+        }
+        return g;
+    }
+
+    /**
+     * Tests whether a formula is built on a node of this factory.
+     * @param f
+     * @return
+     */
+    public boolean owns(Formula f) {
+        return f.node != null && f.node.factory == this;
+    }
+
+    /**
+     * Returns the number of distinct nodes created by this factory.
+     * @return
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    private Formula register(Key key, Formula f, Key foldedKey) {
+        Integer id = ids.get(foldedKey);
+        if (id == null) {
+            id = ids.size();
+            ids.put(foldedKey, id);
+        }
+        f.id = id;
+        f.node = f;
+        f.factory = this;
+        nodes.put(key, f);
+        return f;
+    }
+
+    /**
+     * Folds the case of a propositional variable the same way
+     * <code>String.equalsIgnoreCase</code> does.
+     * @param s
+     * @return
+     */
+    static String fold(String s) {
+        char buf[] = new char[s.length()];
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+        return new String(buf);
+    }
+
+    /**
+     * Key of a structure: a connective with either a variable name, child
+     * nodes (compared by reference) or child ids.
+     */
+    private static final class Key {
+
+        final char cntv;
+        final String var;
+        final Formula c0, c1;
+        final int id0, id1;
+        final int hash;
+
+        Key(char cntv, String var, Formula c0, Formula c1) {
+            this.cntv = cntv;
+            this.var = var;
+            this.c0 = c0;
+            this.c1 = c1;
+            this.id0 = -1;
+            this.id1 = -1;
+            this.hash = 31 * (31 * (31 * cntv + (var == null ? 0 : var.hashCode()))
+                    + System.identityHashCode(c0)) + System.identityHashCode(c1);
+        }
+
+        Key(char cntv, String var, int id0, int id1) {
+            this.cntv = cntv;
+            this.var = var;
+            this.c0 = null;
+            this.c1 = null;
+            this.id0 = id0;
+            this.id1 = id1;
+            this.hash = 31 * (31 * (31 * cntv + (var == null ? 0 : var.hashCode())) + id0) + id1;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return cntv == k.cntv && c0 == k.c0 && c1 == k.c1 && id0 == k.id0 && id1 == k.id1
+                    && (var == null ? k.var == null : var.equals(k.var));
+        }
+    }
+}
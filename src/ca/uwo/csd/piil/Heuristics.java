@@ -0,0 +1,101 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>Heuristics</code> gives the branching formulas of a branch a priority
+ * deciding which one is expanded first, lowest first. Formulas of equal
+ * priority are expanded in the order they were added. The priority of a
+ * formula is computed once, when it is added to the branch:
+ * <ul>
+ * <li><code>IN_ORDER</code>: all formulas have the same priority,</li>
+ * <li><code>LOW_RANK_FIRST</code>: the rank of the formula,</li>
+ * <li><code>FEWEST_BRANCHES</code>: an estimate of the number of branches the
+ * formula and its subformulas produce,</li>
+ * <li><code>FAIL_FIRST</code>: the number of branches produced by the formula
+ * which are not closed at once by one of their atoms.</li>
+ * </ul>
+ * @author Syeed Ibn Faiz
+ */
+class Heuristics {
+
+    private static final int MAX_DEPTH = 12;            //subformulas looked at by FEWEST_BRANCHES
+    private static final int MAX_BRANCHES = 1 << 20;
+
+    /**
+     * Returns the priority of a branching formula added to a branch.
+     * @param heuristic one of the heuristics of <code>SolverOptions</code>
+     * @param f
+     * @param branch the branch <code>f</code> is added to
+     * @return
+     */
+    static int priority(int heuristic, Formula f, Branch branch) {
+        switch (heuristic) {
+            case SolverOptions.LOW_RANK_FIRST:
+                return f.getRank();
+            case SolverOptions.FEWEST_BRANCHES:
+                return countBranches(f, f.getSign(), MAX_DEPTH);
+            case SolverOptions.FAIL_FIRST:
+                return countOpenBranches(f, branch);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Estimates the number of branches produced by fully expanding a formula.
+     * @param f a formula
+     * @param sign turnstile of <code>f</code>
+     * @param depth levels of subformulas still looked at
+     * @return
+     */
+    private static int countBranches(Formula f, int sign, int depth) {
+        if (depth == 0 || f.getType() == Formula.ATOMIC) {
+            return 1;
+        }
+        RuleTable.Child rule[][] = RuleTable.lookup(f, sign);
+        if (rule == null) {
+            return 1;
+        }
+        long total = 0;
+        for (RuleTable.Child branch[] : rule) {
+            long product = 1;
+            for (RuleTable.Child c : branch) {
+                if (!c.expanded) {
+                    product = Math.min(MAX_BRANCHES, product * countBranches(f.getChild(c.index), c.sign, depth - 1));
+                }
+            }
+            total += product;
+        }
+        return (int) Math.min(MAX_BRANCHES, total);
+    }
+
+    /**
+     * Counts the branches produced by a formula which none of their atoms closes.
+     * @param f a formula
+     * @param branch
+     * @return
+     */
+    private static int countOpenBranches(Formula f, Branch branch) {
+        RuleTable.Child rule[][] = RuleTable.lookup(f);
+        if (rule == null) {
+            return 0;
+        }
+        int open = 0;
+        for (RuleTable.Child b[] : rule) {
+            boolean closed = false;
+            for (int i = 0; i < b.length && !closed; i++) {
+                if (f.getChild(b[i].index).getType() == Formula.ATOMIC) {
+                    closed = branch.closes(b[i].instantiate(f));
+                }
+            }
+            if (!closed) {
+                open++;
+            }
+        }
+        return open;
+    }
+}
@@ -6,18 +6,68 @@
 package ca.uwo.csd.piil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 
 /**
  * Interpretation is a data structure for storing an interpretation scheme.
+ * <p>
+ * Two interpretations are equal if they have the same literals up to a
+ * renaming of their concrete justification symbols: formulas with the same
+ * type of knowledge, turnstile, quantifier, structure (ignoring case of
+ * variables) and justification prefix, whose symbols have the same ranks and
+ * are either the same variable or concrete symbols mapped one to one. A
+ * concrete symbol is a fresh name, created anew by every branch expanding an
+ * existential formula, so schemes differing only by those names are one
+ * scheme, whatever order the tableau was expanded in. The order of the
+ * formulas and duplicates do not matter.
+ * <p>
+ * The canonical form used to compare them is built when first needed, which
+ * may be before the symbols are numbered, since only their ids are used. The
+ * concrete symbols are told apart by refining a color of each symbol with the
+ * literals it occurs in; the literals are then sorted by those colors and the
+ * symbols renamed 1, 2, ... in order of first occurrence. Schemes so
+ * symmetric that the colors cannot order their symbols may keep distinct
+ * canonical forms; unequal schemes never get the same one.
  * @author Syeed Ibn Faiz
  */
 public class Interpretation {
 
+    private static final int ROUNDS = 3;    //refinements of the colors of the symbols
+
     ArrayList<Formula> hardKnowledge;
     ArrayList<Formula> softKnowledge;
     ArrayList<Formula> justKnowledge;
+    private Literal literals[];             //canonical form, null until needed
+    private int hash;
+
+    /**
+     * Order of literals: type of knowledge, turnstile, quantifier, structure,
+     * then justification prefix. Formulas of different factories are compared
+     * by structure. The symbols of prefixes are compared by rank, variables
+     * first, then by <code>key</code>.
+     */
+    private static final Comparator<Literal> LITERAL_ORDER = new Comparator<Literal>() {
+
+        public int compare(Literal l1, Literal l2) {
+            Formula f1 = l1.f;
+            Formula f2 = l2.f;
+            if (f1.getKnowledgeType() != f2.getKnowledgeType()) return f1.getKnowledgeType() < f2.getKnowledgeType() ? -1 : 1;
+            if (f1.getSign() != f2.getSign()) return f1.getSign() < f2.getSign() ? -1 : 1;
+            if (f1.getQuantifier() != f2.getQuantifier()) return f1.getQuantifier() < f2.getQuantifier() ? -1 : 1;
+            int c = compareStructure(f1, f2);
+            if (c != 0) return c;
+            if (l1.rank.length != l2.rank.length) return l1.rank.length < l2.rank.length ? -1 : 1;
+            for (int i = 0; i < l1.rank.length; i++) {
+                if (l1.rank[i] != l2.rank[i]) return l1.rank[i] < l2.rank[i] ? -1 : 1;
+                if ((l1.symbol[i] < 0) != (l2.symbol[i] < 0)) return l1.symbol[i] < 0 ? -1 : 1;
+                if (l1.key[i] != l2.key[i]) return l1.key[i] < l2.key[i] ? -1 : 1;
+            }
+            return 0;
+        }
+    };
 
     /**
      * Constructs an interpretation from a given list of formulas. These formulas
@@ -37,7 +87,6 @@ public class Interpretation {
                 softKnowledge.add(f);
            }
            else {
-               String s = f.toString();               
                justKnowledge.add(f);
            }
         }
@@ -48,6 +97,7 @@ public class Interpretation {
                 String s2 = o2.getVar();
                 if (s1 == null) return 1;
                 else if (s2 == null) return 1;
+                else if (Formula.sameVar(o1, o2)) return 0;
                 else return s1.compareToIgnoreCase(s2);
             }
         };
@@ -57,62 +107,188 @@ public class Interpretation {
     }
 
     /**
-     * Returns a string representation of this interpretation.
-     * @return
+     * Returns the canonical form of this interpretation.
+     * @return the distinct literals with their symbols renamed, sorted by
+     * <code>LITERAL_ORDER</code>
      */
-    @Override
-    public String toString() {
-        String s = "<";
-        s += "{";
-        boolean first = true;
-        for (int i = 0; i < hardKnowledge.size(); i++) {
-            Formula f = hardKnowledge.get(i);
-            if (i > 0 && f.getVar().equalsIgnoreCase(hardKnowledge.get(i - 1).getVar())) { //checking for duplicate entries
-                continue;
+    private synchronized Literal[] literals() {
+        if (literals == null) {
+            ArrayList<Literal> l = new ArrayList<Literal>(hardKnowledge.size() + softKnowledge.size() + justKnowledge.size());
+            HashMap<Integer, Integer> symbols = new HashMap<Integer, Integer>();     //id -> index
+            for (ArrayList<Formula> knowledge : Arrays.asList(hardKnowledge, softKnowledge, justKnowledge)) {
+                for (Formula f : knowledge) {
+                    l.add(new Literal(f, symbols));
+                }
             }
-            if (first) first = false;
-            else s += ",";
-
-            s += f;
-        }        
-        s += "},";
-        
-        s += " {";
-        first = true;
-        for (int i = 0; i < justKnowledge.size(); i++) {
-            Formula f = justKnowledge.get(i);
-            if (i > 0 && f.equals(justKnowledge.get(i - 1))) {
-                continue;
+
+            //colors of the symbols, refined by the literals they occur in
+            int colors[] = new int[symbols.size()];
+            for (int round = 0; round < ROUNDS && colors.length > 0; round++) {
+                int next[] = new int[colors.length];
+                for (Literal lit : l) {
+                    int h = shapeHash(lit);
+                    for (int i = 0; i < lit.rank.length; i++) {
+                        h = 31 * h + (lit.symbol[i] < 0 ? 0 : colors[lit.symbol[i]]);
+                    }
+                    for (int i = 0; i < lit.rank.length; i++) {
+                        if (lit.symbol[i] >= 0) {
+                            next[lit.symbol[i]] += mix(31 * h + i);
+                        }
+                    }
+                }
+                colors = next;
+            }
+            for (Literal lit : l) {
+                for (int i = 0; i < lit.rank.length; i++) {
+                    lit.key[i] = lit.symbol[i] < 0 ? 0 : colors[lit.symbol[i]];
+                }
             }
-            if (first) first = false;
-            else s += ",";
-
-            String tmp = f.toString();
-            if (f.getQuantifier() == Formula.GENJUST) {
-                tmp = tmp.replaceAll("⊨", "+*");
-                tmp = tmp.replaceAll("⊭", "+/*");
-                tmp = tmp.replaceAll("⊫", "-/*");
-                tmp = tmp.replaceAll("⊯", "-*");
+            Collections.sort(l, LITERAL_ORDER);
+
+            //rename the symbols in order of first occurrence
+            int names[] = new int[symbols.size()];
+            int count = 0;
+            for (Literal lit : l) {
+                for (int i = 0; i < lit.rank.length; i++) {
+                    if (lit.symbol[i] >= 0) {
+                        if (names[lit.symbol[i]] == 0) {
+                            names[lit.symbol[i]] = ++count;
+                        }
+                        lit.key[i] = names[lit.symbol[i]];
+                    }
+                }
             }
-            s += tmp;
+            Collections.sort(l, LITERAL_ORDER);
+            int n = 0;
+            for (int i = 0; i < l.size(); i++) {
+                if (n == 0 || LITERAL_ORDER.compare(l.get(n - 1), l.get(i)) != 0) {
+                    l.set(n++, l.get(i));
+                }
+            }
+            Literal lits[] = l.subList(0, n).toArray(new Literal[n]);
+            int h = 1;
+            for (Literal lit : lits) {
+                int lh = shapeHash(lit);
+                for (int k : lit.key) {
+                    lh = 31 * lh + k;
+                }
+                h = 31 * h + lh;
+            }
+            hash = h;
+            literals = lits;
         }
-        s += "},";
-
-        s += " {";
-        first = true;
-        for (int i = 0; i < softKnowledge.size(); i++) {
-            Formula f = softKnowledge.get(i);
-            if (i > 0 && f.getVar().equalsIgnoreCase(softKnowledge.get(i - 1).getVar())) {
-                continue;
+        return literals;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Interpretation)) return false;
+        Interpretation other = (Interpretation) o;
+        Literal l1[] = literals();
+        Literal l2[] = other.literals();
+        if (hash != other.hash || l1.length != l2.length) return false;
+        for (int i = 0; i < l1.length; i++) {
+            if (LITERAL_ORDER.compare(l1[i], l2[i]) != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        literals();
+        return hash;
+    }
+
+    /**
+     * Hashes a literal without the names of its concrete symbols.
+     * @param lit
+     * @return
+     */
+    private static int shapeHash(Literal lit) {
+        Formula f = lit.f;
+        int h = 31 * (31 * (31 * f.getKnowledgeType() + f.getSign()) + f.getQuantifier()) + f.structureHash();
+        for (int i = 0; i < lit.rank.length; i++) {
+            h = 31 * (31 * h + lit.rank[i]) + (lit.symbol[i] < 0 ? 0 : 1);
+        }
+        return h;
+    }
+
+    /**
+     * Scrambles the bits of a hash, so that sums of hashes tell apart
+     * different sets of occurrences.
+     * @param h
+     * @return
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Compares the structures of two formulas, ignoring case of variables.
+     * @param f1
+     * @param f2
+     * @return
+     */
+    private static int compareStructure(Formula f1, Formula f2) {
+        if (Formula.sameFactory(f1, f2) && f1.getId() == f2.getId()) return 0;
+        if (f1.structureHash() != f2.structureHash()) return f1.structureHash() < f2.structureHash() ? -1 : 1;
+        if (f1.getType() != f2.getType()) return f1.getType() < f2.getType() ? -1 : 1;
+        if (f1.getType() == Formula.ATOMIC) {
+            return FormulaFactory.fold(f1.getVar()).compareTo(FormulaFactory.fold(f2.getVar()));
+        }
+        if (f1.getCntv() != f2.getCntv()) return f1.getCntv() < f2.getCntv() ? -1 : 1;
+        int c = compareStructure(f1.getChild(0), f2.getChild(0));
+        if (c != 0 || f1.getType() == Formula.COMP_UNARY) return c;
+        return compareStructure(f1.getChild(1), f2.getChild(1));
+    }
+
+    /**
+     * A literal of the canonical form: a formula and the symbols of its
+     * justification prefix, first symbol first.
+     */
+    private static final class Literal {
+
+        final Formula f;
+        final int rank[];
+        final int symbol[];             //index of a concrete symbol in its interpretation, -1 for a variable
+        final int key[];                //color, then canonical name of a concrete symbol; 0 for a variable
+
+        Literal(Formula f, HashMap<Integer, Integer> symbols) {
+            this.f = f;
+            int n = JustificationPrefix.size(f.getJPrefix());
+            rank = new int[n];
+            symbol = new int[n];
+            key = new int[n];
+            JustificationPrefix p = f.getJPrefix();
+            for (int i = n - 1; i >= 0; i--, p = p.getParent()) {
+                Justification j = p.getLast();
+                rank[i] = j.getRank();
+                if (j.getLbl() == 0) {
+                    symbol[i] = -1;
+                } else {
+                    Integer index = symbols.get(j.getId());
+                    if (index == null) {
+                        index = symbols.size();
+                        symbols.put(j.getId(), index);
+                    }
+                    symbol[i] = index;
+                }
             }
-            if (first) first = false;
-            else s += ",";
-            
-            s += f;
         }
-        s += "}>";
+    }
 
-        return s;
+    /**
+     * Returns a string representation of this interpretation.
+     * @return
+     */
+    @Override
+    public String toString() {
+        return ResultWriter.appendInterpretation(new StringBuilder(), this).toString();
     }
 
     public ArrayList<Formula> getJustKnowledge() {
@@ -14,24 +14,26 @@ package ca.uwo.csd.piil;
  */
 public class Justification {
 
-    private static int count = 1;   // static counter to generate unique symbol
     private int lbl;                // a particular count value for this symbol
     private int rank;               // rank of this interpretation symbol
+    private int id;                 // unique within a solve from creation on, 0 for a variable
 
     /**
-     * Constructs a justification symbol.
+     * Constructs a justification symbol. A concrete symbol has no label until
+     * the <code>SymbolGenerator</code> of its solve numbers it.
      * @param rank rank of this symbol
      * @param isUniv specifies whether this symbol is for a universal quantifier or not.
      */
     public Justification(int rank, boolean isUniv) {
         this.rank = rank;
         if (isUniv) this.lbl = 0;   // this symbol is a variable, unifyable with a symbol
-        else this.lbl = count++;    // a concrete symbol
+        else this.lbl = -1;         // a concrete symbol, not numbered yet
     }
 
     public Justification(Justification old) {
         this.rank = old.rank;
         this.lbl = old.lbl;
+        this.id = old.id;
     }
     /**
      * Tests whether this symbol can be unified with a given symbol.
@@ -43,10 +45,31 @@ public class Justification {
         return this.lbl == 0 || j.lbl == 0;
     }
 
+    /**
+     * Gives this symbol a label.
+     * @param lbl a positive label, unique within a solve
+     */
+    void setLbl(int lbl) {
+        this.lbl = lbl;
+    }
+
     public int getLbl() {
         return lbl;
     }
 
+    /**
+     * Gives this symbol an id, so that it can be told apart from the other
+     * symbols of its solve before it is labelled.
+     * @param id a positive id, unique within a solve
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
     public int getRank() {
         return rank;
     }
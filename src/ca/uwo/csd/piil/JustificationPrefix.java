@@ -0,0 +1,133 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>JustificationPrefix</code> is an immutable justification prefix, kept
+ * as a list of cells from the last symbol added to the first one. Extending a
+ * prefix creates one cell and shares the prefix extended, so formulas derived
+ * from the same formula share their prefixes instead of copying them. An
+ * empty prefix is <code>null</code>.
+ * <p>
+ * Two prefixes match if their symbols unify pairwise. Prefixes sharing cells
+ * are compared only down to the first shared cell; below it they match iff
+ * every symbol is a variable, since a concrete symbol unifies only with a
+ * variable. Each cell records that, so comparing a prefix with itself or with
+ * an extension of itself takes constant time.
+ * <p>
+ * Every cell also gets a serial number when it is created, unique in the JVM,
+ * so that prefixes compared by identity can be put in a stable order.
+ * @author Syeed Ibn Faiz
+ */
+public final class JustificationPrefix {
+
+    private final Justification last;           //symbol added last
+    private final JustificationPrefix parent;   //symbols added before it, null if none
+    private final int size;
+    private final boolean variables;            //all symbols are variables
+    private final long serial;
+
+    private static final AtomicLong serials = new AtomicLong();
+
+    private JustificationPrefix(JustificationPrefix parent, Justification last) {
+        this.serial = serials.incrementAndGet();
+        this.last = last;
+        this.parent = parent;
+        this.size = parent == null ? 1 : parent.size + 1;
+        this.variables = last.getLbl() == 0 && (parent == null || parent.variables);
+    }
+
+    /**
+     * Returns a prefix extended by a symbol.
+     * @param prefix a prefix, <code>null</code> if empty
+     * @param j
+     * @return
+     */
+    public static JustificationPrefix extend(JustificationPrefix prefix, Justification j) {
+        return new JustificationPrefix(prefix, j);
+    }
+
+    /**
+     * Returns the number of symbols of a prefix.
+     * @param prefix a prefix, <code>null</code> if empty
+     * @return
+     */
+    public static int size(JustificationPrefix prefix) {
+        return prefix == null ? 0 : prefix.size;
+    }
+
+    /**
+     * Returns the serial number of a prefix.
+     * @param prefix a prefix, <code>null</code> if empty
+     * @return a positive number unique to <code>prefix</code>, 0 for the empty prefix
+     */
+    static long serial(JustificationPrefix prefix) {
+        return prefix == null ? 0 : prefix.serial;
+    }
+
+    public Justification getLast() {
+        return last;
+    }
+
+    public JustificationPrefix getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the symbol at a position, the first symbol added being at 0.
+     * @param i
+     * @return
+     */
+    public Justification get(int i) {
+        return ancestor(this, i + 1).last;
+    }
+
+    /**
+     * Returns the first <code>n</code> symbols of a prefix.
+     * @param prefix
+     * @param n at most the size of <code>prefix</code>
+     * @return
+     */
+    static JustificationPrefix ancestor(JustificationPrefix prefix, int n) {
+        for (int i = size(prefix); i > n; i--) {
+            prefix = prefix.parent;
+        }
+        return prefix;
+    }
+
+    /**
+     * Tests whether two prefixes have the same size and unifiable symbols.
+     * @param p1 a prefix, <code>null</code> if empty
+     * @param p2 a prefix, <code>null</code> if empty
+     * @return
+     */
+    static boolean matches(JustificationPrefix p1, JustificationPrefix p2) {
+        if (p1 == null || p2 == null) return p1 == p2;
+        if (p1.size != p2.size) return false;
+
+        while (p1 != p2) {
+            if (!p1.last.equals(p2.last)) return false;
+            p1 = p1.parent;
+            p2 = p2.parent;
+        }
+        return p1 == null || p1.variables;
+    }
+
+    /**
+     * Returns the symbols, the last one added first.
+     * @return
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (JustificationPrefix p = this; p != null; p = p.parent) {
+            sb.append(p.last);
+        }
+        return sb.toString();
+    }
+}
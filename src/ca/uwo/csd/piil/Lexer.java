@@ -0,0 +1,183 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>Lexer</code> splits a sequence of PIIL sentences into tokens in a single
+ * pass over the characters, without copying the input. It reads the input as
+ * follows:
+ * <ul>
+ * <li>blanks (spaces and tabs) are ignored everywhere, even inside a
+ * propositional variable or a 2-character connective,</li>
+ * <li><code>-&gt;</code>, <code>/\</code>, <code>\/</code> and <code>~'</code>
+ * are read as <code>&gt;</code>, <code>&amp;</code>, <code>|</code> and
+ * <code>#</code>,</li>
+ * <li><code>;</code> and new lines separate sentences.</li>
+ * </ul>
+ * Only the current token is kept; <code>advance</code> reads the next one.
+ * @author Syeed Ibn Faiz
+ */
+class Lexer {
+
+    /* Token kinds */
+    public static final int EOF = 0;
+    public static final int SEP = 1;            // ; or new line
+    public static final int IDENT = 2;          // [a-zA-Z0-9_]+
+    public static final int LPAREN = 3;
+    public static final int RPAREN = 4;
+    public static final int COMMA = 5;
+    public static final int IMPL = 6;           // > or ->
+    public static final int OR = 7;             // | or \/
+    public static final int AND = 8;            // & or /\
+    public static final int BANG = 9;           // !
+    public static final int NEG = 10;           // -
+    public static final int TILDE = 11;         // ~
+    public static final int HASH = 12;          // # or ~'
+    public static final int STAR = 13;          // *
+    public static final int OTHER = 14;         //any other character
+
+    private final CharSequence input;
+    private int pos = 0;                        //next character to read
+
+    /* Current token */
+    private int kind;
+    private int start;
+    private String text;
+
+    /**
+     * Constructs a lexer positioned on the first token of an input.
+     * @param input
+     */
+    public Lexer(CharSequence input) {
+        this.input = input;
+        advance();
+    }
+
+    /**
+     * Returns the kind of the current token.
+     * @return
+     */
+    public int kind() {
+        return kind;
+    }
+
+    /**
+     * Returns the offset in the input of the first character of the current token.
+     * @return
+     */
+    public int start() {
+        return start;
+    }
+
+    /**
+     * Returns the text of the current token, without blanks.
+     * @return
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Replaces the text of the current token, e.g. to remove a prefix of a
+     * propositional variable.
+     * @param text
+     */
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Returns the input being read.
+     * @return
+     */
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * Reads the next token.
+     */
+    public void advance() {
+        int len = input.length();
+        pos = skipBlanks(pos);
+        start = pos;
+        if (pos >= len) {
+            kind = EOF;
+            text = "";
+            return;
+        }
+        char c = input.charAt(pos++);
+        if (isIdentChar(c)) {
+            readIdent();
+            return;
+        }
+        kind = OTHER;
+        switch (c) {
+            case ';':
+            case '\n': kind = SEP;      break;
+            case '(': kind = LPAREN;    break;
+            case ')': kind = RPAREN;    break;
+            case ',': kind = COMMA;     break;
+            case '>': kind = IMPL;      break;
+            case '|': kind = OR;        break;
+            case '&': kind = AND;       break;
+            case '!': kind = BANG;      break;
+            case '#': kind = HASH;      break;
+            case '*': kind = STAR;      break;
+            case '-': kind = follows('>') ? IMPL : NEG;     break;
+            case '~': kind = follows('\'') ? HASH : TILDE;  break;
+            case '/': if (follows('\\')) kind = AND;        break;
+            case '\\': if (follows('/')) kind = OR;         break;
+        }
+        text = input.subSequence(start, pos).toString();
+    }
+
+    /**
+     * Reads the rest of a propositional variable, which may continue after blanks.
+     */
+    private void readIdent() {
+        int len = input.length();
+        int end = pos;
+        while (end < len && isIdentChar(input.charAt(end))) end++;
+        StringBuilder sb = null;
+        int next = skipBlanks(end);
+        while (next > end && next < len && isIdentChar(input.charAt(next))) {
+            if (sb == null) {
+                sb = new StringBuilder().append(input, start, end);
+            }
+            end = next;
+            while (end < len && isIdentChar(input.charAt(end))) end++;
+            sb.append(input, next, end);
+            next = skipBlanks(end);
+        }
+        pos = end;
+        kind = IDENT;
+        text = sb == null ? input.subSequence(start, end).toString() : sb.toString();
+    }
+
+    /**
+     * Consumes the next non-blank character if it is <code>ch</code>.
+     * @param ch
+     * @return true if consumed
+     */
+    private boolean follows(char ch) {
+        int next = skipBlanks(pos);
+        if (next < input.length() && input.charAt(next) == ch) {
+            pos = next + 1;
+            return true;
+        }
+        return false;
+    }
+
+    private int skipBlanks(int i) {
+        while (i < input.length() && (input.charAt(i) == ' ' || input.charAt(i) == '\t')) i++;
+        return i;
+    }
+
+    static boolean isIdentChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
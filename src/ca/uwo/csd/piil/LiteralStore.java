@@ -0,0 +1,100 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>LiteralStore</code> records the atoms of a tableau branch which have no
+ * justification prefix. It keeps one bitset over variable ids for every
+ * turnstile and every type of knowledge:
+ * <pre>
+ *            TRUE   NOT_TRUE   POT_TRUE   NOT_POT_TRUE
+ *   HARD     ....     ....       ....        ....
+ *   SOFT     ....     ....       ....        ....
+ *   JUST     ....     ....       ....        ....
+ * </pre>
+ * so testing whether a literal is on the branch is a single bit test. Bitsets
+ * are stored in chunks of 512 bits in a <code>PersistentIntMap</code>; adding
+ * a literal copies one chunk, so a store can be shared between branches like
+ * <code>Branch</code> and <code>ClosureIndex</code>.
+ * @author Syeed Ibn Faiz
+ */
+class LiteralStore {
+
+    private static final int WORDS = 8;                     //words per chunk
+    private static final int CHUNK_BITS = WORDS * 64;
+    private static final int SETS = 12;                     //3 types of knowledge x 4 turnstiles
+
+    public static final LiteralStore EMPTY = new LiteralStore(new PersistentIntMap<long[]>());
+
+    private final PersistentIntMap<long[]> chunks;          //chunk index * SETS + set -> words
+
+    private LiteralStore(PersistentIntMap<long[]> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * Tests whether a turnstile can be stored.
+     * @param sign
+     * @return
+     */
+    static boolean isStorable(int sign) {
+        return sign == Formula.TRUE || sign == Formula.NOT_TRUE || sign == Formula.POT_TRUE || sign == Formula.NOT_POT_TRUE;
+    }
+
+    /**
+     * Tests whether the store contains a literal.
+     * @param knowledge type of knowledge
+     * @param sign turnstile
+     * @param var id of the propositional variable
+     * @return
+     */
+    public boolean contains(int knowledge, int sign, int var) {
+        long words[] = chunks.get(key(knowledge, sign, var));
+        return words != null && (words[(var % CHUNK_BITS) >>> 6] & (1L << var)) != 0;
+    }
+
+    /**
+     * Tests whether the store contains a literal of any type of knowledge.
+     * @param sign turnstile
+     * @param var id of the propositional variable
+     * @return
+     */
+    public boolean contains(int sign, int var) {
+        return contains(Formula.HARD, sign, var) || contains(Formula.SOFT, sign, var) || contains(Formula.JUST, sign, var);
+    }
+
+    /**
+     * Returns a store containing all the literals of this one and another literal.
+     * @param knowledge type of knowledge
+     * @param sign turnstile
+     * @param var id of the propositional variable
+     * @return the updated store
+     */
+    public LiteralStore add(int knowledge, int sign, int var) {
+        int key = key(knowledge, sign, var);
+        long words[] = chunks.get(key);
+        int w = (var % CHUNK_BITS) >>> 6;
+        if (words != null && (words[w] & (1L << var)) != 0) {
+            return this;
+        }
+        words = words == null ? new long[WORDS] : words.clone();
+        words[w] |= 1L << var;
+        return new LiteralStore(chunks.put(key, words));
+    }
+
+    /**
+     * Returns the key of the chunk holding a literal. Knowledge other than soft
+     * and justification is stored as hard knowledge.
+     * @param knowledge
+     * @param sign
+     * @param var
+     * @return
+     */
+    private static int key(int knowledge, int sign, int var) {
+        int k = knowledge == Formula.SOFT ? 1 : (knowledge == Formula.JUST ? 2 : 0);
+        return (var / CHUNK_BITS) * SETS + k * 4 + sign / 2;
+    }
+}
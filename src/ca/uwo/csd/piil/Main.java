@@ -5,104 +5,124 @@
 package ca.uwo.csd.piil;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Main class. It performs the following steps.
  * <ul>
- * <li>Get content from input file.</li>
- * <li>Remove comments from content.</li>
- * <li>Use <code>Parser</code> to parse content and get a list of <code>Formula</code>s from that.</li>
+ * <li>Read the sentences of the input file without comments using <code>SentenceReader</code>.</li>
+ * <li>Use <code>Parser</code> to parse them and get a list of <code>Formula</code>s from that.</li>
  * <li>Use <code>Solver</code> to get a list of interpretation schemes from the list of <code>Formula</code>s.</li>
- * <li>Write the set of interpretation schemes to output file/standard output.</li>
+ * <li>Write the set of interpretation schemes to output file/standard output with
+ * <code>ResultWriter</code>, in UTF-16, or in UTF-8 with <code>-utf8</code>.</li>
  * </ul>
+ * With <code>-batch</code> these steps are run for every problem of a directory
+ * or a manifest by a pool of threads in the same JVM. With <code>-parallel</code>
+ * the tableau is expanded and the minimal models are found by fork/join tasks.
+ * With <code>-memo n</code> a search remembers up to <i>n</i> closed branches
+ * and does not expand them again when other branches reach the same
+ * formulas. That pays off when many branches end in the same contradiction,
+ * e.g. below splits whose sides add the same formulas; when the branches
+ * differ, it only adds the cost of their keys, up to about twice the time.
  * @author Syeed Ibn Faiz
  */
 public class Main {
 
     public static void main(String args[]) {
-        if (args.length < 1) {
-            System.out.println("Usage java -jar pil.jar inputFile [outputFile]");
+        boolean parallel = false;
+        boolean batch = false;
+        Charset charset = ResultWriter.UTF16;
+        int threads = Runtime.getRuntime().availableProcessors();
+        SolverOptions options = new SolverOptions();
+        ArrayList<String> files = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-parallel")) {
+                    parallel = true;
+                } else if (args[i].equals("-utf8")) {
+                    charset = ResultWriter.UTF8;
+                } else if (args[i].equals("-batch")) {
+                    batch = true;
+                } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-timeout") && i + 1 < args.length) {
+                    options.setTimeLimit(Long.parseLong(args[++i]));
+                } else if (args[i].equals("-maxmodels") && i + 1 < args.length) {
+                    options.setMaxModels(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-memo") && i + 1 < args.length) {
+                    options.setMemoSize(Integer.parseInt(args[++i]));
+                } else {
+                    files.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException ex) {
+            files.clear();
+        }
+        if (files.size() < 1 || threads < 1) {
+            System.out.println("Usage java -jar pil.jar [-parallel] [-utf8] [-timeout milliseconds] [-maxmodels n] [-memo n] inputFile [outputFile]");
+            System.out.println("      java -jar pil.jar -batch [-threads n] [-parallel] [-utf8] [-timeout milliseconds] [-maxmodels n] [-memo n] directory|manifest [outputDirectory]");
+            return;
+        }
+        if (batch) {
+            solveBatch(new File(files.get(0)), files.size() > 1 ? new File(files.get(1)) : null, threads, parallel, options, charset);
             return;
         }
 
-        File inputFile = new File(args[0]);
+        File inputFile = new File(files.get(0));
         File outputFile = null;
-        if (args.length > 1) {
-            outputFile = new File(args[1]);
+        if (files.size() > 1) {
+            outputFile = new File(files.get(1));
         }
 
-        String content = "";
+        SentenceReader reader = null;
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-            String s = "";
-            while ((s = reader.readLine()) != null) {
-                content += s + "\n";
-            }
-            reader.close();
+            reader = new SentenceReader(inputFile);
         } catch (IOException ex) {
             System.out.println("Error occured while reading from input file: " + ex.getMessage());
             System.exit(0);
         }
 
-        content = processComment(content);
-        //System.out.println(content);
-
         Parser parser = new Parser();
         Solver solver = new Solver();
+        solver.setParallel(parallel);
+        solver.setOptions(options);
         ArrayList<Interpretation> result = null;
         ArrayList<Formula> fList = null;
         try {
-            fList = parser.parse(content);
+            fList = parser.parse(reader);
+            reader.close();
             result = solver.solve(fList);
+        } catch (IOException ex) {
+            System.out.println("Error occured while reading from input file: " + ex.getMessage());
+            System.exit(0);
         } catch (Exception ex) {
             System.out.println("Exception occured : " + ex.getMessage());
             System.exit(0);
         }
 
         try {
-            BufferedWriter writer;
+            ResultWriter writer;
             if (outputFile != null) {
-                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-16"));
+                writer = new ResultWriter(new FileOutputStream(outputFile), charset);
             } else {
-                writer = new BufferedWriter(new OutputStreamWriter(System.out, "UTF-16"));
+                writer = new ResultWriter(System.out, charset);
             }
 
-            if (fList != null) {
-                writer.write("Input: " + fList.toString() + "\n\n");
-            }
-            if (result == null) {
-                writer.write("No model found.");
-            } else {
-                if (result.size() == 1) {
-                    writer.write("1 model found.\n");
-                } else {
-                    writer.write(result.size() + " models found.\n");
-                }
-
-                for (int i = 0; i < result.size(); i++) {
-                    writer.write(result.get(i).toString());
-                    writer.write("\n");
-                }
-
-                Ordering ordering = new Ordering(result);
-                result = ordering.getJustificationOrdering();
-                writer.write("Minimal models according to justification ordering:\n");
-                for (Interpretation i : result) {
-                    writer.write(i.toString());
-                }
-                result = ordering.getWarrantOrdering();
-                writer.write("\nMinimal models according to warrant ordering:\n");
-                for (Interpretation i : result) {
-                    writer.write(i.toString());
-                }
-            }
+            Ordering ordering = new Ordering(result);
+            ordering.setParallel(parallel);
+            writer.writeResult(fList, result, solver.isTruncated(), ordering);
             writer.flush();
             writer.close();
         } catch (IOException ex) {
@@ -114,19 +134,179 @@ public class Main {
     }
 
     /**
-     * Removes comment from a given input.
-     * @param s
-     * @return
+     * Solves many problems in one run. <code>source</code> is either a
+     * directory, whose files ending with ".in" are solved, or a manifest
+     * listing one problem file per line (relative paths are resolved against
+     * the directory of the manifest). The problems are solved by a pool of
+     * threads; the result of "x.in" is written to "x.out" in
+     * <code>outputDir</code>, or next to it if not given. A problem whose
+     * output file would be that of an earlier one is reported and not solved.
+     * One line is printed per problem, in the order of the list.
+     * @param source a directory or a manifest
+     * @param outputDir
+     * @param threads number of problems solved at the same time
+     * @param parallel whether each problem is solved in parallel too
+     * @param options limits of the solver
+     * @param charset encoding of the output files
      */
-    public static String processComment(String s) {
-        int start;
-        while ((start = s.indexOf("/*")) != -1) {
-            int end = s.indexOf("*/", start + 1);
-            if (end == -1) {
+    public static void solveBatch(File source, File outputDir, int threads, final boolean parallel, final SolverOptions options, final Charset charset) {
+        ArrayList<File> inputs;
+        try {
+            inputs = listProblems(source);
+        } catch (IOException ex) {
+            System.out.println("Error occured while reading the list of problems: " + ex.getMessage());
+            return;
+        }
+        if (outputDir != null) {
+            outputDir.mkdirs();
+        }
+
+        ArrayList<File> outputs = outputFiles(inputs, outputDir);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayList<Future<String>> results = new ArrayList<Future<String>>();
+        for (int i = 0; i < inputs.size(); i++) {
+            final File input = inputs.get(i);
+            final File output = outputs.get(i);
+            if (output == null) {
+                results.add(null);
+                continue;
+            }
+            results.add(pool.submit(new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    return solveFile(input, output, parallel, options, charset);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        for (int i = 0; i < inputs.size(); i++) {
+            String status;
+            if (results.get(i) == null) {
+                System.out.println(inputs.get(i).getPath() + ": Not solved: " + outputName(inputs.get(i)) + " is the output of an earlier problem.");
+                continue;
+            }
+            try {
+                status = results.get(i).get();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                status = "Exception occured : " + (cause.getMessage() != null ? cause.getMessage() : cause.toString());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
                 break;
             }
-            s = s.replace(s.substring(start, end + 2), "");
+            System.out.println(inputs.get(i).getPath() + ": " + status);
+        }
+        System.out.println("Done.");
+    }
+
+    /**
+     * Returns the problem files of a directory or a manifest.
+     * @param source
+     * @return
+     * @throws IOException
+     */
+    static ArrayList<File> listProblems(File source) throws IOException {
+        ArrayList<File> inputs = new ArrayList<File>();
+        if (source.isDirectory()) {
+            File list[] = source.listFiles();
+            if (list == null) {
+                throw new IOException("Cannot list " + source);
+            }
+            Arrays.sort(list);
+            for (File f : list) {
+                if (f.isFile() && f.getName().endsWith(".in")) {
+                    inputs.add(f);
+                }
+            }
+        } else {
+            BufferedReader reader = new BufferedReader(new FileReader(source));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    File f = new File(line);
+                    if (!f.isAbsolute()) {
+                        f = new File(source.getAbsoluteFile().getParentFile(), line);
+                    }
+                    inputs.add(f);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Returns the output file of every problem, in order. A problem whose
+     * output file is that of an earlier problem, e.g. "a/x.in" and "b/x.in"
+     * with one output directory, gets <code>null</code> instead, so that no
+     * result is overwritten.
+     * @param inputs
+     * @param outputDir the directory of the output files, or <code>null</code>
+     * for the directory of each problem
+     * @return
+     */
+    static ArrayList<File> outputFiles(ArrayList<File> inputs, File outputDir) {
+        ArrayList<File> outputs = new ArrayList<File>(inputs.size());
+        HashSet<File> used = new HashSet<File>();
+        for (File input : inputs) {
+            File output = new File(outputDir != null ? outputDir : input.getAbsoluteFile().getParentFile(), outputName(input));
+            outputs.add(used.add(output.getAbsoluteFile()) ? output : null);
+        }
+        return outputs;
+    }
+
+    /**
+     * Returns the name of the output file of a problem: "x.in" gives "x.out".
+     * @param input
+     * @return
+     */
+    static String outputName(File input) {
+        String name = input.getName();
+        if (name.endsWith(".in")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name + ".out";
+    }
+
+    /**
+     * Solves the problem of an input file and writes the result to an output file.
+     * @param inputFile
+     * @param outputFile
+     * @param parallel
+     * @param options
+     * @param charset encoding of the output file
+     * @return a summary of the result
+     * @throws Exception if the input cannot be read or parsed, or the output written
+     */
+    static String solveFile(File inputFile, File outputFile, boolean parallel, SolverOptions options, Charset charset) throws Exception {
+        SentenceReader reader = new SentenceReader(inputFile);
+        ArrayList<Formula> fList;
+        try {
+            fList = new Parser().parse(reader);
+        } finally {
+            reader.close();
+        }
+        Solver solver = new Solver();
+        solver.setParallel(parallel);
+        solver.setOptions(options);
+        ArrayList<Interpretation> result = solver.solve(fList);
+
+        Ordering ordering = new Ordering(result);
+        ordering.setParallel(parallel);
+        ResultWriter writer = new ResultWriter(new FileOutputStream(outputFile), charset);
+        try {
+            writer.writeResult(fList, result, solver.isTruncated(), ordering);
+        } finally {
+            writer.close();
         }
-        return s;
+        String status = result == null ? "No model found." : (result.size() == 1 ? "1 model found." : result.size() + " models found.");
+        return solver.isTruncated() ? status + " (stopped at a limit)" : status;
     }
 }
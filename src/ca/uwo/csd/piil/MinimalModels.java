@@ -0,0 +1,221 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <code>MinimalModels</code> finds the minimal elements of a set of models
+ * preordered by inclusion of sets of formulas. Every model is described by a
+ * few sets, stored as bitsets over ids of formulas, and model <i>j</i> precedes
+ * model <i>i</i> if for every set
+ * <ul>
+ * <li>the set of <i>j</i> contains the set of <i>i</i>, when having more
+ * formulas makes a model smaller, or</li>
+ * <li>the set of <i>j</i> is contained in the set of <i>i</i> otherwise.</li>
+ * </ul>
+ * A model is minimal if no model strictly precedes it.
+ * <p>
+ * If <i>j</i> strictly precedes <i>i</i>, the score of <i>j</i> (sizes of the
+ * sets of the first kind minus sizes of the sets of the second kind) is
+ * greater than the score of <i>i</i>. Models are therefore scanned by
+ * decreasing score, and a model is only compared with the minimal models of
+ * greater score found before it: any model strictly preceding it is preceded
+ * by one of them.
+ * <p>
+ * The scan can be run by fork/join tasks. Models are then taken in chunks of
+ * consecutive scores, and the models of a chunk are tested at the same time
+ * against the minimal models of the chunks before and the models before them
+ * in the chunk. The result is the same.
+ * @author Syeed Ibn Faiz
+ */
+class MinimalModels {
+
+    /* Parallel scan */
+    public static final int PARALLEL_THRESHOLD = 512;      //fewer models are scanned sequentially
+    private static final int CHUNK = 1024;                  //models tested at the same time
+    private static final int LEAF = 16;                     //models tested by one task
+
+    private final int size;
+    private final ArrayList<long[][]> sets = new ArrayList<long[][]>();    //component -> model -> words
+    private final ArrayList<int[]> cards = new ArrayList<int[]>();         //component -> model -> size of the set
+    private final ArrayList<Boolean> more = new ArrayList<Boolean>();      //component -> more formulas is smaller
+
+    /**
+     * Constructs an engine for a number of models, without any set.
+     * @param size number of models
+     */
+    MinimalModels(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Adds one set to every model.
+     * @param ids ids of the formulas of the set of each model; duplicates are allowed
+     * @param more <code>true</code> if a model with more formulas precedes
+     */
+    void add(int[][] ids, boolean more) {
+        int max = -1;
+        for (int[] l : ids) {
+            for (int id : l) {
+                max = Math.max(max, id);
+            }
+        }
+        int words = (max >> 6) + 1;
+        long[][] bits = new long[size][words];
+        int[] card = new int[size];
+        for (int i = 0; i < size; i++) {
+            for (int id : ids[i]) {
+                bits[i][id >> 6] |= 1L << id;
+            }
+            for (long w : bits[i]) {
+                card[i] += Long.bitCount(w);
+            }
+        }
+        sets.add(bits);
+        cards.add(card);
+        this.more.add(more);
+    }
+
+    /**
+     * Finds the minimal models.
+     * @param parallel whether large sets of models are scanned by fork/join tasks
+     * @return whether each model is minimal
+     */
+    boolean[] minimal(boolean parallel) {
+        int[] score = new int[size];
+        for (int c = 0; c < sets.size(); c++) {
+            int sgn = more.get(c) ? 1 : -1;
+            for (int i = 0; i < size; i++) {
+                score[i] += sgn * cards.get(c)[i];
+            }
+        }
+        long[] keys = new long[size];                       //decreasing score, then index
+        for (int i = 0; i < size; i++) {
+            keys[i] = ((long) -score[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int p = 0; p < size; p++) {
+            order[p] = (int) keys[p];
+        }
+
+        boolean[] minimal = new boolean[size];
+        int[] found = new int[size];                        //minimal models, by decreasing score
+        int n = 0;
+        if (!parallel || size < PARALLEL_THRESHOLD) {
+            for (int i : order) {
+                if (!isPreceded(i, found, 0, n, score)) {
+                    minimal[i] = true;
+                    found[n++] = i;
+                }
+            }
+            return minimal;
+        }
+        //the models of a chunk are tested at the same time, against the minimal
+        //models of the chunks before and against the models before them in the chunk
+        for (int start = 0; start < size; start += CHUNK) {
+            int end = Math.min(size, start + CHUNK);
+            ForkJoinPool.commonPool().invoke(new ScanTask(order, start, start, end, found, n, score, minimal));
+            for (int p = start; p < end; p++) {
+                if (minimal[order[p]]) {
+                    found[n++] = order[p];
+                }
+            }
+        }
+        return minimal;
+    }
+
+    /**
+     * Tests whether a model is strictly preceded by one of a list of models.
+     * Models of the list with a score not greater than that of the model are
+     * not tested, so the list must be ordered by decreasing score.
+     * @param i
+     * @param list
+     * @param from first position of the list
+     * @param to end of the list
+     * @param score
+     * @return
+     */
+    private boolean isPreceded(int i, int[] list, int from, int to, int[] score) {
+        for (int k = from; k < to && score[list[k]] > score[i]; k++) {
+            if (precedes(list[k], i)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether model <i>j</i> precedes model <i>i</i>.
+     * @param j
+     * @param i
+     * @return
+     */
+    private boolean precedes(int j, int i) {
+        for (int c = 0; c < sets.size(); c++) {
+            int[] card = cards.get(c);
+            long[][] bits = sets.get(c);
+            if (more.get(c)) {
+                if (card[i] > card[j] || !isSubset(bits[i], bits[j])) return false;
+            } else {
+                if (card[j] > card[i] || !isSubset(bits[j], bits[i])) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests the models of a range of a chunk.
+     */
+    private class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int chunk;            //first position of the chunk
+        private final int start;
+        private final int end;
+        private final int[] found;
+        private final int n;
+        private final int[] score;
+        private final boolean[] minimal;
+
+        ScanTask(int[] order, int chunk, int start, int end, int[] found, int n, int[] score, boolean[] minimal) {
+            this.order = order;
+            this.chunk = chunk;
+            this.start = start;
+            this.end = end;
+            this.found = found;
+            this.n = n;
+            this.score = score;
+            this.minimal = minimal;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start > LEAF) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new ScanTask(order, chunk, start, mid, found, n, score, minimal),
+                        new ScanTask(order, chunk, mid, end, found, n, score, minimal));
+                return;
+            }
+            for (int p = start; p < end; p++) {
+                int i = order[p];
+                //a model preceded by any model is not minimal, whether that one is minimal or not
+                minimal[i] = !isPreceded(i, found, 0, n, score) && !isPreceded(i, order, chunk, p, score);
+            }
+        }
+    }
+
+    private static boolean isSubset(long[] a, long[] b) {
+        for (int w = 0; w < a.length; w++) {
+            if ((a[w] & ~b[w]) != 0) return false;
+        }
+        return true;
+    }
+}
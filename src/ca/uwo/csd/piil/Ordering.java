@@ -6,6 +6,8 @@
 package ca.uwo.csd.piil;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 
 /**
  *
@@ -16,12 +18,19 @@ public class Ordering {
     ArrayList<Interpretation> models;
     ArrayList<ArrayList<Formula>> posJust;
     ArrayList<ArrayList<Formula>> negJust;
+    private FormulaIds justIds;                 //justification knowledge, numbered by isEqual
+    private boolean parallel = false;
+    private ArrayList<Interpretation> justificationMinimal;    //computed when first asked for
+    private ArrayList<Interpretation> warrantMinimal;
 
     public Ordering(ArrayList<Interpretation> models) {
         this.models = models;
         if (models != null) {
             posJust = new ArrayList<ArrayList<Formula>>();
             negJust = new ArrayList<ArrayList<Formula>>();
+            justIds = new FormulaIds(false);
+            BitSet posKnown = new BitSet();             //ids of positive justification knowledge of some model
+            BitSet negKnown = new BitSet();
             for (Interpretation i : models) {
                 ArrayList<Formula> justK = i.getJustKnowledge();                
 
@@ -31,147 +40,186 @@ public class Ordering {
                 for (Formula f : justK) {
                     if (f.getSign() == Formula.TRUE || f.getSign() == Formula.POT_TRUE) {
                         pos.add(f);
+                        posKnown.set(justIds.id(f));
                     } else {
                         neg.add(f);
+                        negKnown.set(justIds.id(f));
                     }
                 }
 
                 posJust.add(pos);
                 negJust.add(neg);
             }
+            //hard knowledge that is justification knowledge of some model counts as justification knowledge
             for (int i = 0; i < models.size(); i++) {
                 ArrayList<Formula> hardK = models.get(i).getHardKnowledge();
+                BitSet added = new BitSet();        //2 * id, + 1 if negative
 
                 for (Formula f : hardK) {
-                    if (f.getSign() == Formula.TRUE || f.getSign() == Formula.POT_TRUE) {
-                        //pos.add(f);
-                        for (int m = 0; m < posJust.size(); m++) {
-                            int sz = posJust.get(m).size();
-                            for (int n = 0; n < sz; n++) {
-                                if (isEqual(f, posJust.get(m).get(n))) {
-                                    posJust.get(i).add(f);
-                                }
-                            }
-                        }
-                    } else {
-                        //neg.add(f);
-                        for (int m = 0; m < negJust.size(); m++) {
-                            int sz = negJust.get(m).size();
-                            for (int n = 0; n < sz; n++) {
-                                if (isEqual(f, negJust.get(m).get(n))) {
-                                    negJust.get(i).add(f);
-                                }
-                            }
-                        }
+                    boolean positive = f.getSign() == Formula.TRUE || f.getSign() == Formula.POT_TRUE;
+                    int id = justIds.find(f);
+                    if (id < 0 || !(positive ? posKnown : negKnown).get(id)) continue;
+                    int bit = positive ? 2 * id : 2 * id + 1;
+                    if (!added.get(bit)) {
+                        added.set(bit);
+                        (positive ? posJust : negJust).get(i).add(f);
                     }
                 }
-
-                //posJust.add(pos);
-                //negJust.add(neg);
             }
         }
     }
 
-    public ArrayList<Interpretation> getJustificationOrdering() {
-        ArrayList<Interpretation> minModels = new ArrayList<Interpretation>();
-        if (models == null) return minModels;
-        
+    /**
+     * Returns the minimal models according to justification ordering. They
+     * are computed once; the list is shared and must not be modified.
+     * @return
+     */
+    public synchronized ArrayList<Interpretation> getJustificationOrdering() {
+        if (justificationMinimal == null) {
+            justificationMinimal = justificationOrdering();
+        }
+        return justificationMinimal;
+    }
+
+    /**
+     * Returns the minimal models according to warrant ordering. They are
+     * computed once; the list is shared and must not be modified.
+     * @return
+     */
+    public synchronized ArrayList<Interpretation> getWarrantOrdering() {
+        if (warrantMinimal == null) {
+            warrantMinimal = warrantOrdering();
+        }
+        return warrantMinimal;
+    }
+
+    private ArrayList<Interpretation> justificationOrdering() {
+        if (models == null) return new ArrayList<Interpretation>();
+
+        MinimalModels engine = justificationEngine();
+        return select(engine.minimal(parallel));
+    }
+
+    private ArrayList<Interpretation> warrantOrdering() {
+        if (models == null) return new ArrayList<Interpretation>();
+
+        MinimalModels engine = justificationEngine();
+        FormulaIds ids = new FormulaIds(true);
+        int[][] hard = new int[models.size()][];
+        int[][] soft = new int[models.size()][];
         for (int i = 0; i < models.size(); i++) {
-            boolean minimal = true;
-            for (int j = 0; j < models.size(); j++) {
-                if (i == j) continue;
-                // j < i?                
-                if (precedesJust(j, i) && !precedesJust(i, j)) {
-                    minimal = false;                    
-                    break;
-                }
-            }
-            if (minimal) {
-                //System.out.println("Minimal model: " + models.get(i));
-                minModels.add(models.get(i));
-            }
+            hard[i] = ids.ids(models.get(i).getHardKnowledge());
+            soft[i] = ids.ids(models.get(i).getSoftKnowledge());
         }
-        return minModels;
+        engine.add(hard, false);
+        engine.add(soft, true);
+        return select(engine.minimal(parallel));
     }
-    public ArrayList<Interpretation> getWarrantOrdering() {
-        ArrayList<Interpretation> minModels = new ArrayList<Interpretation>();
-        if (models == null) return minModels;
 
+    /**
+     * Enables or disables parallel ordering. In parallel mode the minimal models
+     * of large sets of models are found by fork/join tasks. The result is the
+     * same as that of sequential ordering. It must be set before the minimal
+     * models are first asked for.
+     * @param parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Builds the engine for justification ordering: model j precedes model i
+     * if j has all positive and i all negative justification knowledge of the other.
+     * @return
+     */
+    private MinimalModels justificationEngine() {
+        int[][] pos = new int[models.size()][];
+        int[][] neg = new int[models.size()][];
         for (int i = 0; i < models.size(); i++) {
-            boolean minimal = true;
-            for (int j = 0; j < models.size(); j++) {
-                if (i == j) continue;
-                // j < i?
-                if (precedesWarrant(j, i) && !precedesWarrant(i, j)) {
-                    minimal = false;
-                    break;
-                }
-            }
-            if (minimal) {
-                //System.out.println("Minimal warrant model: " + models.get(i));
+            pos[i] = justIds.ids(posJust.get(i));
+            neg[i] = justIds.ids(negJust.get(i));
+        }
+        MinimalModels engine = new MinimalModels(models.size());
+        engine.add(pos, true);
+        engine.add(neg, false);
+        return engine;
+    }
+
+    private ArrayList<Interpretation> select(boolean[] minimal) {
+        ArrayList<Interpretation> minModels = new ArrayList<Interpretation>();
+        for (int i = 0; i < models.size(); i++) {
+            if (minimal[i]) {
                 minModels.add(models.get(i));
             }
         }
         return minModels;
     }
 
-    private boolean precedesJust(int i, int j) {
-        boolean flg = true;
-        for (int k = 0; k < posJust.get(j).size(); k++) {
-            if (!isMember(posJust.get(j).get(k), posJust.get(i))) {
-                flg = false;
-                break;
-            }
+    /**
+     * Numbers formulas, so that equal formulas (by <code>isEqual</code>, or
+     * <code>isSignedEqual</code> if signed) get the same id.
+     */
+    private class FormulaIds {
+
+        private final boolean signed;
+        private final ArrayList<Formula> formulas = new ArrayList<Formula>();          //id -> formula
+        private final HashMap<Integer, ArrayList<Integer>> buckets = new HashMap<Integer, ArrayList<Integer>>();   //hash -> ids
+
+        FormulaIds(boolean signed) {
+            this.signed = signed;
         }
-        if (flg) {
-            for (int k = 0; k < negJust.get(i).size(); k++) {
-                if (!isMember(negJust.get(i).get(k), negJust.get(j))) {
-                    flg = false;
-                    break;
-                }
+
+        /**
+         * Returns the id of a formula, numbering it if it is new.
+         * @param f
+         * @return
+         */
+        int id(Formula f) {
+            int id = find(f);
+            if (id >= 0) return id;
+            ArrayList<Integer> bucket = buckets.get(f.structureHash());
+            if (bucket == null) {
+                bucket = new ArrayList<Integer>(1);
+                buckets.put(f.structureHash(), bucket);
             }
+            formulas.add(f);
+            bucket.add(formulas.size() - 1);
+            return formulas.size() - 1;
         }
-        if (flg) {
-            return true;
-        }
-        return false;
-    }
-    private boolean precedesWarrant(int i, int j) {
-        if (precedesJust(i, j)) {
-            //System.out.println("Here @ " + i + " , " + j);
-            ArrayList<Formula> hardKi = models.get(i).getHardKnowledge();
-            ArrayList<Formula> hardKj = models.get(j).getHardKnowledge();
-            
-            for (Formula f : hardKi) {
-                if (!isSignedMember(f, hardKj)) return false;
-                //else System.out.println(f + " is member of " + hardKj);
-            }
-
-            ArrayList<Formula> softKi = models.get(i).getSoftKnowledge();
-            ArrayList<Formula> softKj = models.get(j).getSoftKnowledge();
 
-            for (Formula f : softKj) {
-                if (!isSignedMember(f, softKi)) return false;
-                //else System.out.println(f + " is member of " + softKi);
+        /**
+         * Returns the id of a formula.
+         * @param f
+         * @return the id, or -1 if the formula has none
+         */
+        int find(Formula f) {
+            ArrayList<Integer> bucket = buckets.get(f.structureHash());
+            if (bucket != null) {
+                for (int id : bucket) {
+                    Formula g = formulas.get(id);
+                    if (signed ? isSignedEqual(f, g) : isEqual(f, g)) return id;
+                }
             }
-            return true;
-            
-        } else {            
-            return false;
+            return -1;
         }
 
-    }
-    private boolean isMember(Formula f, ArrayList<Formula> list) {
-        if (list == null) return false;
-        for (int i = 0; i < list.size(); i++) {
-            if (isEqual(f, list.get(i))) return true;
+        int[] ids(ArrayList<Formula> list) {
+            int[] l = new int[list.size()];
+            for (int i = 0; i < l.length; i++) {
+                l[i] = id(list.get(i));
+            }
+            return l;
         }
-        return false;
     }
 
     private boolean isEqual(Formula f1, Formula f2) {
+        if (Formula.sameFactory(f1, f2)) return f1.getId() == f2.getId();
         if (f1.getType() != f2.getType()) return false;
-        else if (f1.getType() == Formula.ATOMIC) return f1.getVar().equalsIgnoreCase(f2.getVar());
+        else if (f1.getType() == Formula.ATOMIC) return Formula.sameVar(f1, f2);
         else if (f1.getCntv() == f2.getCntv()) {
             if (f1.getType() == Formula.COMP_UNARY) return isEqual(f1.getChild(0), f2.getChild(0));
             else return isEqual(f1.getChild(0), f2.getChild(0)) && isEqual(f1.getChild(1), f2.getChild(1));
@@ -180,19 +228,13 @@ public class Ordering {
     }
     private boolean isSignedEqual(Formula f1, Formula f2) {
         if ((f1.getType() != f2.getType()) || (f1.getSign() != f2.getSign())) return false;
-        else if (f1.getType() == Formula.ATOMIC) return f1.getVar().equalsIgnoreCase(f2.getVar());
+        else if (Formula.sameFactory(f1, f2)) return f1.getId() == f2.getId();     //subformulas of nodes are unsigned
+        else if (f1.getType() == Formula.ATOMIC) return Formula.sameVar(f1, f2);
         else if (f1.getCntv() == f2.getCntv()) {
             if (f1.getType() == Formula.COMP_UNARY) return isSignedEqual(f1.getChild(0), f2.getChild(0));
             else return isSignedEqual(f1.getChild(0), f2.getChild(0)) && isSignedEqual(f1.getChild(1), f2.getChild(1));
 
         } else return false;        
     }
-    private boolean isSignedMember(Formula f, ArrayList<Formula> list) {
-        if (list == null) return false;
-        for (int i = 0; i < list.size(); i++) {
-            if (isSignedEqual(f, list.get(i))) return true;
-        }
-        return false;
-    }
 
 }
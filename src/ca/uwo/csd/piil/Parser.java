@@ -7,13 +7,12 @@ package ca.uwo.csd.piil;
 
 import java.util.ArrayList;
 import java.util.Scanner;
-import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
 /**
  * <code>Parser</code> implements a recursive decent parser of sequence of propositional
- * partial information ionic formula of arbitrary rank. The Grammar it implements is the
- * following:
+ * partial information ionic formula of arbitrary rank. It reads tokens from a
+ * <code>Lexer</code> and never looks back, so sentences are parsed in linear time.
+ * The Grammar it implements is the following:
  * <pre>
  * Sequence     ->  Sentence (Separator Sentence)*
  * Sentence     ->  Formula | Turnstile Formula
@@ -29,32 +28,90 @@ import java.util.regex.Pattern;
  */
 public class Parser {
 
+    /* Turnstiles in the order they are tried */
+    private static final String TURNSTILES[] = {"T", "NT", "PT", "NPT"};
+    private static final int SIGNS[] = {Formula.TRUE, Formula.NOT_TRUE, Formula.POT_TRUE, Formula.NOT_POT_TRUE};
+
+    /* Binary connectives from lowest to highest precedence */
+    private static final int BINARY_TOKENS[] = {Lexer.OR, Lexer.AND, Lexer.BANG};
+    private static final char BINARY_CNTVS[] = {'|', '&', '!'};
+
+    private SymbolTable symbols = new SymbolTable();        //ids of propositional variables
+    private FormulaFactory factory = new FormulaFactory(symbols);   //shares identical subformulas
+
     /**
      * Parses a sequence of sentences of propositional partial information ionic logic.
+     * Identical subformulas of the sentences are shared. The input is read once
+     * by a <code>Lexer</code>, so parsing takes time linear in its length.
      * @param str a sequence of logic sentences
      * @return a list of <code>Formula</code>s
      * @throws Exception
      */
     public ArrayList<Formula> parse(String str) throws Exception  {
+        symbols = new SymbolTable();
+        factory = new FormulaFactory(symbols);
+        ArrayList<Formula> sentList = new ArrayList<Formula>();
+        Lexer lexer = new Lexer(str);
+
+        while (lexer.kind() != Lexer.EOF) {
+            if (lexer.kind() == Lexer.SEP) {
+                lexer.advance();
+                continue;
+            }
+            int start = lexer.start();
+            try {
+                Formula f = parseSentence(lexer);
+                f.setKnowledgeType(Formula.HARD);
+                sentList.add(f);
+            } catch (Exception ex) {
+                String msg = ex.getMessage();
+                msg += " (while processing " + sentenceAt(lexer, start) + ")";
+                throw new Exception(msg);
+            }
+        }
+        return sentList;
+    }
+
+    /**
+     * Parses the sentences of a <code>SentenceReader</code> one at a time, so
+     * the input is never held in memory as a whole. Identical subformulas of the
+     * sentences are shared.
+     * @param reader
+     * @return a list of <code>Formula</code>s
+     * @throws Exception if the input cannot be read or a sentence cannot be parsed
+     */
+    public ArrayList<Formula> parse(SentenceReader reader) throws Exception {
+        symbols = new SymbolTable();
+        factory = new FormulaFactory(symbols);
         ArrayList<Formula> sentList = new ArrayList<Formula>();
-        str = preprocess(str);
-        StringTokenizer tokenizer = new StringTokenizer(str, ";\n");
+        String s;
 
-        while (tokenizer.hasMoreTokens()) {
-            String s = tokenizer.nextToken();
+        while ((s = reader.nextSentence()) != null) {
+            Lexer lexer = new Lexer(s);
+            if (lexer.kind() == Lexer.EOF) {            //blanks only
+                continue;
+            }
             try {
-                Formula f = parseSentence(s);
+                Formula f = parseSentence(lexer);
                 f.setKnowledgeType(Formula.HARD);
                 sentList.add(f);
             } catch (Exception ex) {
                 String msg = ex.getMessage();
-                msg += " (while processing " + s + ")";
+                msg += " (while processing " + s.trim() + ")";
                 throw new Exception(msg);
             }
         }
         return sentList;
     }
 
+    /**
+     * Returns the symbol table of the propositional variables of the last parse.
+     * @return
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     /**
      * Parses a single sentence. True turnstile is assumed if none given.
      * T    means True
@@ -66,80 +123,116 @@ public class Parser {
      * @throws Exception
      */
     public Formula parseSentence(String str) throws Exception {
-        
-        int sign = -1;
-        if (str.startsWith("T")) {
-            if (str.length() > 1) str = str.substring(1);
-            else throw new Exception("Parsing Error. Nothing after T..");
-            sign = Formula.TRUE;
-        }
-        else if (str.startsWith("NT")) {
-            if (str.length() > 2) str = str.substring(2);
-            else throw new Exception("Parsing Error.  Nothing after NT..");
-            sign = Formula.NOT_TRUE;
+        return parseSentence(new Lexer(str));
+    }
+
+    /**
+     * Parses the sentence starting at the current token of a lexer, up to the
+     * end of the input or the next separator.
+     * @param lexer
+     * @return
+     * @throws Exception
+     */
+    private Formula parseSentence(Lexer lexer) throws Exception {
+        int sign = parseTurnstile(lexer);
+        Formula f = parseImplication(lexer);
+        if (lexer.kind() != Lexer.SEP && lexer.kind() != Lexer.EOF) {
+            throw unexpected(lexer);
         }
-        else if (str.startsWith("PT")) {
-            if (str.length() > 2) str = str.substring(2);
-            else throw new Exception("Parsing Error.  Nothing after PT..");
-            sign = Formula.POT_TRUE;
+        return new Formula(sign, Formula.UNKNOWN, f, null);
+    }
+
+    /**
+     * Reads the turnstile at the beginning of a sentence. Like a connective,
+     * a turnstile is recognized at the beginning of a propositional variable,
+     * so "Tp" means T p.
+     * @param lexer
+     * @return the turnstile, <code>Formula.TRUE</code> if none is given
+     * @throws Exception
+     */
+    private int parseTurnstile(Lexer lexer) throws Exception {
+        if (lexer.kind() != Lexer.IDENT) {
+            return Formula.TRUE;
         }
-        else if (str.startsWith("NPT")) {
-            if (str.length() > 3) str = str.substring(3);
-            else throw new Exception("Parsing Error.  Nothing after NPT..");
-            sign = Formula.NOT_POT_TRUE;
-        } else {
-            //default case
-            sign = Formula.TRUE;
+        String s = lexer.text();
+        for (int i = 0; i < TURNSTILES.length; i++) {
+            if (s.startsWith(TURNSTILES[i])) {
+                if (s.length() > TURNSTILES[i].length()) {
+                    lexer.setText(s.substring(TURNSTILES[i].length()));
+                } else {
+                    lexer.advance();
+                    if (endsSentence(lexer.kind())) {
+                        throw new Exception("Parsing Error." + (i == 0 ? " " : "  ") + "Nothing after " + TURNSTILES[i] + "..");
+                    }
+                }
+                return SIGNS[i];
+            }
         }
+        return Formula.TRUE;
+    }
 
-        int index = find(str, '>');
-        Formula f = null;
-        if (index != -1) {                              //a&b|c > ~d!e
-            String str1 = str.substring(0, index);      //a&b|c
-            String str2 = str.substring(index + 1);     //~d!e
-            
-            f = new Formula('>', parseF1(str1, '|'), parseSentence(str2));
+    /**
+     * Parses a sentence without turnstile. -> has the lowest precedence and
+     * associates to the right; the right side of -> may have a turnstile, which
+     * is ignored.
+     * @param lexer
+     * @return
+     * @throws Exception
+     */
+    private Formula parseImplication(Lexer lexer) throws Exception {
+        Formula f = parseF1(lexer, 0);
+        if (lexer.kind() != Lexer.IMPL) {
+            return f;
         }
-        else {
-            f = parseF1(str, '|');
+        ArrayList<Formula> operands = new ArrayList<Formula>();
+        operands.add(f);
+        while (lexer.kind() == Lexer.IMPL) {                //a&b|c > ~d!e
+            lexer.advance();
+            parseTurnstile(lexer);
+            operands.add(parseF1(lexer, 0));
         }
-
-        if (sign != -1) f.setSign(sign);
-        return f;
+        return foldRight('>', operands);
     }
 
     /**
      * Parses a formula which does not contain any connectives with precedence
-     * lower than <code>cntv</code> at the top level. This function is written so that it can be
-     * used for &, | and !. For each connective it finds its first occurrence.
-     * If not found then proceeds with the next connective. Otherwise splits the
-     * string into two.
-     * @param str
-     * @param cntv
+     * lower than <code>BINARY_CNTVS[level]</code> at the top level. This function
+     * is written so that it can be used for &, | and !. Each of them associates
+     * to the right.
+     * @param lexer
+     * @param level
      * @return
      * @throws Exception
      */
-    private Formula parseF1(String str, char cntv) throws Exception {
-
-        int index = find(str, cntv);
-        String str1 = null;
-        if (index == -1) {
-            str1 = str;
+    private Formula parseF1(Lexer lexer, int level) throws Exception {
+        if (level == BINARY_TOKENS.length) {
+            return parseF2(lexer);
         }
-        else {
-            str1 = str.substring(0, index);
+        Formula f = parseF1(lexer, level + 1);
+        if (lexer.kind() != BINARY_TOKENS[level]) {
+            return f;
         }
-
-        Formula f = null;
-        switch (cntv) {            
-            case '|': f = parseF1(str1, '&');       break;
-            case '&': f = parseF1(str1, '!');       break;
-            case '!': f = parseF2(str1);            break;
+        ArrayList<Formula> operands = new ArrayList<Formula>();
+        operands.add(f);
+        while (lexer.kind() == BINARY_TOKENS[level]) {
+            lexer.advance();
+            operands.add(parseF1(lexer, level + 1));
         }
-        if (index == -1) return f;
+        return foldRight(BINARY_CNTVS[level], operands);
+    }
 
-        String str2 = str.substring(index + 1);
-        return new Formula(cntv, f, parseF1(str2, cntv));
+    /**
+     * Builds f1 c (f2 c (... c fn)).
+     * @param cntv
+     * @param operands
+     * @return
+     */
+    private Formula foldRight(char cntv, ArrayList<Formula> operands) {
+        Formula f = operands.get(operands.size() - 1);
+        for (int i = operands.size() - 2; i >= 0; i--) {
+            f = factory.binary(cntv, operands.get(i), f);
+        }
+        return f;
     }
 
     /**
@@ -150,60 +243,79 @@ public class Parser {
      * @throws Exception
      */
     public Formula parseF2(String str) throws Exception {
+        Lexer lexer = new Lexer(str);
+        Formula f = parseF2(lexer);
+        if (lexer.kind() != Lexer.EOF) {
+            throw unexpected(lexer);
+        }
+        return f;
+    }
 
-        if (str.startsWith("-")) {
-            if (str.length() > 1) str = str.substring(1);
-            else throw new Exception("Parsing Error.  Nothing after -..");
-            return new Formula('-', parseF2(str));
-
-        } else if(str.startsWith("~")) {
-            if (str.length() > 1) str = str.substring(1);
-            else throw new Exception("Parsing Error.  Nothing after ~..");
-            return new Formula('~', parseF2(str));
-
-        } else if(str.startsWith("#")) {
-            if (str.length() > 1) str = str.substring(1);
-            else throw new Exception("Parsing Error.  Nothing after ~'(#)..");
-            return new Formula('#', parseF2(str));
-
-        } else if(str.startsWith("bot")) {
-            if (str.length() > 3) str = str.substring(3);
-            else throw new Exception("Parsing Error.  Nothing after bot..");
-            return new Formula('@', parseF3(str));
-            
-        } else if (str.startsWith("*")) {
-            char op = 0;
-            if (str.length() > 2 && Character.isDigit(str.charAt(1))) {
-                op = str.charAt(1);
-                str = str.substring(2);
-                
-            } else {
-                op = '*';
-                str = str.substring(1);
+    private Formula parseF2(Lexer lexer) throws Exception {
+        StringBuilder unary = new StringBuilder();          //unary connectives, outermost first
+        while (true) {
+            char cntv;
+            switch (lexer.kind()) {
+                case Lexer.NEG: cntv = '-';     break;
+                case Lexer.TILDE: cntv = '~';   break;
+                case Lexer.HASH: cntv = '#';    break;
+                default: cntv = 0;
             }
-            
-            if (str.startsWith("(") && str.endsWith(")")) {
-                if (str.length() > 1) str = str.substring(1, str.length() - 1);
-                else throw new Exception("Parsing Error.  Nothing after bot..");
-            } else {
-                throw new Exception("Parsing error. () expected");
+            if (cntv == 0) {
+                break;
             }
+            lexer.advance();
+            if (endsOperand(lexer.kind())) {
+                throw new Exception("Parsing Error.  Nothing after " + (cntv == '#' ? "~'(#)" : String.valueOf(cntv)) + "..");
+            }
+            unary.append(cntv);
+        }
 
-            int index = find(str, ',');
-            Formula f = null;
-            if (index != -1) {
-                String str1 = str.substring(0, index);
-                String str2 = str.substring(index + 1);
-                return new Formula(op, parseSentence(str1), parseSentence(str2));
-
+        Formula f;
+        if (lexer.kind() == Lexer.IDENT && lexer.text().startsWith("bot")) {
+            if (lexer.text().length() > 3) {
+                lexer.setText(lexer.text().substring(3));
             } else {
+                lexer.advance();
+                if (endsOperand(lexer.kind())) {
+                    throw new Exception("Parsing Error.  Nothing after bot..");
+                }
+            }
+            f = factory.unary('@', parseF3(lexer));
+
+        } else if (lexer.kind() == Lexer.STAR) {
+            lexer.advance();
+            char op = '*';
+            if (lexer.kind() == Lexer.IDENT && lexer.text().length() == 1 && Character.isDigit(lexer.text().charAt(0))) {
+                op = lexer.text().charAt(0);
+                lexer.advance();
+            }
+            if (lexer.kind() != Lexer.LPAREN) {
+                throw new Exception("Parsing error. () expected");
+            }
+            lexer.advance();
+            Formula f1 = parseNested(lexer);
+            if (lexer.kind() != Lexer.COMMA) {
                 throw new Exception("Parsing error. , expected");
-            }            
+            }
+            lexer.advance();
+            Formula f2 = parseNested(lexer);
+            if (lexer.kind() != Lexer.RPAREN) {
+                throw new Exception("Parsing error. () expected");
+            }
+            lexer.advance();
+            f = factory.binary(op, f1, f2);
 
         } else {
-            return parseF3(str);
+            f = parseF3(lexer);
         }
+
+        for (int i = unary.length() - 1; i >= 0; i--) {
+            f = factory.unary(unary.charAt(i), f);
+        }
+        return f;
     }
+
     /**
      * Parses a formula which is either a propositional formula or has the form
      * '(' Formula ')'.
@@ -211,73 +323,81 @@ public class Parser {
      * @return
      * @throws Exception
      */
-    public Formula parseF3(String str) throws Exception {        
-        if (str.startsWith("(")) {
-            if (!str.endsWith(")")) {
+    public Formula parseF3(String str) throws Exception {
+        Lexer lexer = new Lexer(str);
+        Formula f = parseF3(lexer);
+        if (lexer.kind() != Lexer.EOF) {
+            throw unexpected(lexer);
+        }
+        return f;
+    }
+
+    private Formula parseF3(Lexer lexer) throws Exception {
+        if (lexer.kind() == Lexer.LPAREN) {
+            lexer.advance();
+            Formula f = parseNested(lexer);
+            if (lexer.kind() != Lexer.RPAREN) {
                 throw new Exception("Missing )..");
             }
-            /*else {
-                if (str.length() > 1) str = str.substring(1, str.length() - 1);
-                else throw new Exception("Parsing Error.  Nothing after bot..");
-            }*/
-            str = str.substring(1, str.length() - 1);
-            return parseSentence(str);
-        }
-        else {
+            lexer.advance();
+            return f;
+        } else if (lexer.kind() == Lexer.IDENT) {
             //proposition variable
-            for (int i = 0; i < str.length(); i++) {
-                if (!Character.isLetterOrDigit(str.charAt(i)) && str.charAt(i) != '_') {
-                    throw  new Exception("Unexpected character in propositional variable name: " + str);
-                }
-            }
-            if (str.isEmpty()) {
-                throw  new Exception("Empty operand found ");
-            }
-            return new Formula(str);
+            Formula f = factory.atom(lexer.text());
+            lexer.advance();
+            return f;
+        } else if (endsOperand(lexer.kind())) {
+            throw  new Exception("Empty operand found ");
         }
+        throw unexpected(lexer);
     }
 
     /**
-     * Searches <code>ch</code> in <code>String s</code> outside of any bracket, that means
-     * find("(a)", 'a') returns -1
-     * @param s a String where to look for <code>ch</code>
-     * @param ch a character to find in <code>s</code>
-     * @return the index where <code>ch</code> is found or -1 if not found
+     * Parses a sentence inside brackets, an ion or on the right side of ->.
+     * Its turnstile, if any, is ignored.
+     * @param lexer
+     * @return
+     * @throws Exception
      */
-    public int find(String s, char ch) {
-        int bCount = 0;
+    private Formula parseNested(Lexer lexer) throws Exception {
+        parseTurnstile(lexer);
+        return parseImplication(lexer);
+    }
 
-        for (int i = 0; i < s.length(); i++) {
-            if (s.charAt(i) == '(') {
-                bCount++;
-            }
-            else if(s.charAt(i) == ')') {
-                bCount--;
-            }
-            else if(s.charAt(i) == ch && (bCount == 0)) {
-                return i;
-            }
-        }
-        return -1;
+    /**
+     * Tests whether a token ends a sentence, nested or not.
+     * @param kind
+     * @return
+     */
+    private static boolean endsSentence(int kind) {
+        return kind == Lexer.EOF || kind == Lexer.SEP || kind == Lexer.RPAREN || kind == Lexer.COMMA;
     }
 
     /**
-     * Preprocesses input string to remove whitespace, convert 2-character
-     * connective into 1-character. From
-     * -> to >
-     * /\ to &
-     * \/ to |
-     * ~' to #
-     * @param str
+     * Tests whether a token ends the operand of a binary connective.
+     * @param kind
+     * @return
+     */
+    private static boolean endsOperand(int kind) {
+        return endsSentence(kind) || kind == Lexer.IMPL || kind == Lexer.OR || kind == Lexer.AND || kind == Lexer.BANG;
+    }
+
+    private static Exception unexpected(Lexer lexer) {
+        return new Exception("Unexpected character in propositional variable name: " + lexer.text());
+    }
+
+    /**
+     * Returns the text of the sentence starting at an offset of the input of
+     * a lexer, for error messages.
+     * @param lexer
+     * @param start
      * @return
      */
-    public String preprocess(String str) {
-        str = str.replaceAll("[ \t]+", "");
-        str = str.replaceAll("->", ">");
-        str = str.replaceAll(Pattern.quote("/\\"), "&");
-        str = str.replaceAll(Pattern.quote("\\/"), "|");
-        str = str.replaceAll("~'", "#");
-        return str;
+    private static String sentenceAt(Lexer lexer, int start) {
+        CharSequence input = lexer.getInput();
+        int end = start;
+        while (end < input.length() && input.charAt(end) != ';' && input.charAt(end) != '\n') end++;
+        return input.subSequence(start, end).toString().trim();
     }
 
     /**
@@ -0,0 +1,108 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>PersistentIntMap</code> is an immutable map from <code>int</code> keys to
+ * values. <code>put</code> returns a new map sharing all but O(log n) nodes with
+ * the old one, which makes it cheap to keep one map per tableau branch.
+ * It is implemented as a treap whose priorities are computed from the keys,
+ * so the shape of the tree only depends on the set of keys.
+ * @param <V> type of values
+ * @author Syeed Ibn Faiz
+ */
+class PersistentIntMap<V> {
+
+    private final Node<V> root;
+    private final int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public PersistentIntMap() {
+        this(null, 0);
+    }
+
+    private PersistentIntMap(Node<V> root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of keys in this map.
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the value stored for a key.
+     * @param key
+     * @return the value for <code>key</code> or <code>null</code> if there is none
+     */
+    public V get(int key) {
+        Node<V> n = root;
+        while (n != null) {
+            if (key < n.key) n = n.left;
+            else if (key > n.key) n = n.right;
+            else return n.value;
+        }
+        return null;
+    }
+
+    /**
+     * Returns a map containing all the entries of this map and <code>key</code>
+     * mapped to <code>value</code>.
+     * @param key
+     * @param value
+     * @return the updated map
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        boolean isNew = get(key) == null;
+        return new PersistentIntMap<V>(put(root, key, value), isNew ? size + 1 : size);
+    }
+
+    private static <V> Node<V> put(Node<V> n, int key, V value) {
+        if (n == null) {
+            return new Node<V>(key, value, null, null);
+        }
+        if (key < n.key) {
+            Node<V> l = put(n.left, key, value);
+            if (l.priority > n.priority) {              //rotate right
+                return new Node<V>(l.key, l.value, l.left, new Node<V>(n.key, n.value, l.right, n.right));
+            }
+            return new Node<V>(n.key, n.value, l, n.right);
+        } else if (key > n.key) {
+            Node<V> r = put(n.right, key, value);
+            if (r.priority > n.priority) {              //rotate left
+                return new Node<V>(r.key, r.value, new Node<V>(n.key, n.value, n.left, r.left), r.right);
+            }
+            return new Node<V>(n.key, n.value, n.left, r);
+        } else {
+            return new Node<V>(key, value, n.left, n.right);
+        }
+    }
+
+    private static final class Node<V> {
+
+        final int key;
+        final V value;
+        final int priority;
+        final Node<V> left;
+        final Node<V> right;
+
+        Node(int key, V value, Node<V> left, Node<V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            //scrambles the key so that consecutive keys get unrelated priorities
+            int h = key * 0x9E3779B9;
+            this.priority = h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <code>ResultCache</code> keeps the results of recent solves, so that a set of
+ * formulas solved before, possibly given in another order, is answered without
+ * running the tableau again. A set of formulas is identified by its sentences
+ * with the case of variables folded, as variables are compared ignoring case,
+ * sorted as text, and by the options that decide which interpretation schemes
+ * are found and in what order: search order, heuristic, maximum number of
+ * schemes and maximum depth, and whether the solver is parallel, since a
+ * parallel search lists the schemes of a breadth-first search in another
+ * order. A hit returns the schemes with the spelling of the variables of the
+ * problem first solved. Only complete results are kept: a search stopped at
+ * a limit is not cached.
+ * <p>
+ * The cache is bounded by a number of entries and by the number of formulas
+ * its entries hold (formulas of the input and of the interpretation schemes).
+ * Memory is bounded by this count of formulas only, not by the number of
+ * schemes: the schemes of an entry are not limited on their own, and the
+ * minimal models computed for an entry are not counted. The least recently
+ * used entries are evicted first. A cache can be shared by several threads.
+ * @author Syeed Ibn Faiz
+ */
+public class ResultCache {
+
+    private final int maxEntries;
+    private final long maxFormulas;
+    private long formulas = 0;                      //formulas held by the entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /* Counters */
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Constructs an empty cache.
+     * @param maxEntries maximum number of results kept
+     * @param maxFormulas maximum number of formulas held by the results
+     */
+    public ResultCache(int maxEntries, long maxFormulas) {
+        this.maxEntries = maxEntries;
+        this.maxFormulas = maxFormulas;
+    }
+
+    /**
+     * Produces the interpretation schemes of a set of PPIIL formulas, from the
+     * cache if possible, or else with <code>solver</code>.
+     * @param solver
+     * @param list a list of PPIIL formulas
+     * @return the result
+     */
+    public Entry solve(Solver solver, ArrayList<Formula> list) {
+        String key = key(list, solver.getOptions(), solver.isParallel());
+        Entry e = get(key);
+        if (e != null) {
+            return e;
+        }
+        e = new Entry(list, solver.solve(list), solver.isTruncated(), solver.isParallel());
+        if (!e.isTruncated()) {
+            put(key, e);
+        }
+        return e;
+    }
+
+    /**
+     * Returns the key of a set of formulas: the options deciding its schemes,
+     * then its sentences, case folded and sorted.
+     * @param list
+     * @param options
+     * @param parallel
+     * @return
+     */
+    static String key(List<Formula> list, SolverOptions options, boolean parallel) {
+        ArrayList<String> sentences = new ArrayList<String>(list.size());
+        int length = 0;
+        for (Formula f : list) {
+            String s = FormulaFactory.fold(f.toString());
+            sentences.add(s);
+            length += s.length() + 1;
+        }
+        Collections.sort(sentences);
+        StringBuilder sb = new StringBuilder(length + 32);
+        sb.append(options.getSearchOrder()).append(' ').append(options.getHeuristic()).append(' ')
+                .append(options.getMaxModels()).append(' ').append(options.getMaxDepth()).append(' ')
+                .append(parallel).append('\n');
+        for (String s : sentences) {
+            sb.append(s).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private synchronized Entry get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return e;
+    }
+
+    private synchronized void put(String key, Entry e) {
+        if (e.weight > maxFormulas || maxEntries < 1) {
+            return;
+        }
+        Entry old = entries.put(key, e);
+        if (old != null) {
+            formulas -= old.weight;
+        }
+        formulas += e.weight;
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || formulas > maxFormulas) {
+            formulas -= it.next().getValue().weight;          //least recently used first
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes all entries. The counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        formulas = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getFormulaCount() {
+        return formulas;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " entries, " + formulas + " formulas, " + hits + " hits, "
+                + misses + " misses, " + evictions + " evictions";
+    }
+
+    /**
+     * The result of a solve. Its <code>Ordering</code> is built when first
+     * asked for, and computes the minimal models once, so a hit does not
+     * order the schemes again.
+     */
+    public static class Entry {
+
+        private final ArrayList<Interpretation> models;
+        private final boolean truncated;
+        private final long weight;                  //formulas held
+        private final boolean parallel;             //whether the orderings are computed in parallel
+        private Ordering ordering;
+
+        Entry(List<Formula> list, ArrayList<Interpretation> models, boolean truncated, boolean parallel) {
+            this.models = models;
+            this.truncated = truncated;
+            this.parallel = parallel;
+            long w = list == null ? 0 : list.size();
+            if (models != null) {
+                for (Interpretation i : models) {
+                    w += i.getHardKnowledge().size() + i.getSoftKnowledge().size() + i.getJustKnowledge().size();
+                }
+            }
+            this.weight = w;
+        }
+
+        /**
+         * Returns the interpretation schemes. The list is shared and must not be modified.
+         * @return the schemes, or <code>null</code> if there is none
+         */
+        public ArrayList<Interpretation> getModels() {
+            return models;
+        }
+
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * Returns the ordering of the interpretation schemes, shared by all hits.
+         * @return
+         */
+        public synchronized Ordering getOrdering() {
+            if (ordering == null) {
+                ordering = new Ordering(models);
+                ordering.setParallel(parallel);
+            }
+            return ordering;
+        }
+    }
+}
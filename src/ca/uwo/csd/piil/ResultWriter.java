@@ -0,0 +1,287 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <code>ResultWriter</code> writes formulas, interpretation schemes and the
+ * results of solves to a character stream. Text is appended to a single
+ * buffer, which is passed on to the stream whenever it is full, and
+ * turnstiles and ions are taken from precomputed tables, so the cost of
+ * writing is linear in the size of the output. <code>Formula.toString</code>
+ * and <code>Interpretation.toString</code> are built by the same code.
+ * <p>
+ * Output files are written in UTF-16 unless another charset, such as UTF-8,
+ * is chosen.
+ * @author Syeed Ibn Faiz
+ */
+public class ResultWriter {
+
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+    public static final Charset UTF16 = Charset.forName("UTF-16");
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /* Symbols, indexed by turnstile / 2 */
+    private static final String TURNSTILES[] = {"⊨ ", "⊭ ", "⊫ ", "⊯ "};
+    private static final String SOFT_TURNSTILES[] = {"⊨₅ ", "⊭₅ ", "⊫₅ ", "⊯₅ "};
+    private static final String GENERIC_TURNSTILES[] = {"+* ", "+/* ", "-/* ", "-* "};   //generic justification formulas of a scheme
+    private static final String IONS[] = {"♢", "♡", "♠", "O", "♣", "•", "∆", "∇", "⋈"};
+    private static final String QUANTIFIERS[] = {"", "∀", "∃"};                   //none, universal, existential
+    private static final String CLOSINGS[] = {")", ")∀", ")∃"};
+
+    private Writer out;
+    private StringBuilder buffer = new StringBuilder(BUFFER_SIZE);
+    private char chars[] = new char[BUFFER_SIZE];
+
+    /**
+     * Writes to a character stream.
+     * @param out
+     */
+    public ResultWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes to a byte stream.
+     * @param out
+     * @param charset encoding of the output
+     */
+    public ResultWriter(OutputStream out, Charset charset) {
+        this(new OutputStreamWriter(out, charset));
+    }
+
+    public void write(String s) throws IOException {
+        buffer.append(s);
+        spill();
+    }
+
+    public void write(Formula f) throws IOException {
+        appendFormula(buffer, f, false);
+        spill();
+    }
+
+    public void write(Interpretation i) throws IOException {
+        appendInterpretation(buffer, i);
+        spill();
+    }
+
+    /**
+     * Writes the result of a solve and the minimal models according to the
+     * two orderings.
+     * @param fList input formulas, not written if <code>null</code>
+     * @param result interpretation schemes, <code>null</code> if there is none
+     * @param truncated whether the search was stopped at a limit
+     * @param ordering ordering of <code>result</code>
+     * @throws IOException
+     */
+    public void writeResult(List<Formula> fList, ArrayList<Interpretation> result, boolean truncated, Ordering ordering) throws IOException {
+        if (fList != null) {
+            buffer.append("Input: [");
+            for (int i = 0; i < fList.size(); i++) {
+                if (i > 0) {
+                    buffer.append(", ");
+                }
+                write(fList.get(i));
+            }
+            buffer.append("]\n\n");
+        }
+        if (truncated) {
+            buffer.append("Search stopped at a limit, the models below may be incomplete.\n");
+        }
+        if (result == null) {
+            buffer.append("No model found.");
+        } else {
+            if (result.size() == 1) {
+                buffer.append("1 model found.\n");
+            } else {
+                buffer.append(result.size()).append(" models found.\n");
+            }
+
+            for (Interpretation i : result) {
+                write(i);
+                buffer.append('\n');
+            }
+
+            buffer.append("Minimal models according to justification ordering:\n");
+            for (Interpretation i : ordering.getJustificationOrdering()) {
+                write(i);
+            }
+            buffer.append("\nMinimal models according to warrant ordering:\n");
+            for (Interpretation i : ordering.getWarrantOrdering()) {
+                write(i);
+            }
+        }
+        spill();
+    }
+
+    /**
+     * Passes the buffer on to the stream and flushes it.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+
+    /**
+     * Passes the buffer on to the stream if it is full.
+     * @throws IOException
+     */
+    private void spill() throws IOException {
+        if (buffer.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        int n = buffer.length();
+        if (n > chars.length) {
+            chars = new char[n];
+        }
+        buffer.getChars(0, n, chars, 0);
+        out.write(chars, 0, n);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Appends the text of a formula. Subformulas waiting to be written and
+     * the text closing their parents are kept on an explicit stack, so a
+     * deeply nested formula does not need a deep Java stack.
+     * @param sb
+     * @param f
+     * @param generic whether turnstiles are written as those of generic justification
+     * @return <code>sb</code>
+     */
+    static StringBuilder appendFormula(StringBuilder sb, Formula f, boolean generic) {
+        ArrayDeque<Object> stack = new ArrayDeque<Object>();        //formulas and text, next one on top
+        stack.push(f);
+        while (!stack.isEmpty()) {
+            Object top = stack.pop();
+            if (top instanceof String) {
+                sb.append((String) top);
+                continue;
+            }
+            f = (Formula) top;
+            for (JustificationPrefix p = f.getJPrefix(); p != null; p = p.getParent()) {
+                int lbl = p.getLast().getLbl();
+                if (lbl == 0) {
+                    sb.append('J');
+                } else {
+                    sb.append('j').append(lbl);
+                }
+            }
+            if (f.getJPrefix() != null) {
+                sb.append(' ');
+            }
+
+            int sign = f.getSign();
+            if (sign >= Formula.TRUE && sign <= Formula.NOT_POT_TRUE && sign % 2 == 0) {
+                if (f.getKnowledgeType() == Formula.HARD || f.getKnowledgeType() == Formula.JUST) {
+                    sb.append(generic ? GENERIC_TURNSTILES[sign / 2] : TURNSTILES[sign / 2]);
+                } else if (f.getKnowledgeType() == Formula.SOFT) {
+                    sb.append(SOFT_TURNSTILES[sign / 2]);
+                }
+            }
+
+            char cntv = f.getCntv();
+            int q = f.getQuantifier() == Formula.UNIV ? 1 : (f.getQuantifier() == Formula.EXIST ? 2 : 0);
+            if (f.getType() == Formula.ATOMIC) {
+                sb.append(f.getVar()).append(QUANTIFIERS[q]);
+                continue;
+            }
+            stack.push(CLOSINGS[q]);
+            if (f.getType() == Formula.COMP_UNARY) {
+                if (cntv == '#') {
+                    sb.append("~'(");
+                } else if (cntv == '@') {
+                    sb.append("bot(");
+                } else {
+                    sb.append(cntv).append('(');
+                }
+            } else {
+                stack.push(f.getChild(1));
+                if (cntv == '>') {
+                    sb.append('(');
+                    stack.push(" -> ");
+                } else if (Character.isDigit(cntv)) {
+                    sb.append(IONS[cntv - '0']).append('(');
+                    stack.push(", ");
+                } else if (cntv == '*') {
+                    sb.append("*(");
+                    stack.push(", ");
+                } else {
+                    sb.append('(');
+                    stack.push(" " + cntv + " ");
+                }
+            }
+            stack.push(f.getChild(0));
+        }
+        return sb;
+    }
+
+    /**
+     * Appends the text of an interpretation scheme. Hard and soft knowledge
+     * is written once per variable and repeated justification knowledge once.
+     * @param sb
+     * @param in
+     * @return <code>sb</code>
+     */
+    static StringBuilder appendInterpretation(StringBuilder sb, Interpretation in) {
+        ArrayList<Formula> hardK = in.getHardKnowledge();
+        ArrayList<Formula> justK = in.getJustKnowledge();
+        ArrayList<Formula> softK = in.getSoftKnowledge();
+
+        sb.append("<{");
+        boolean first = true;
+        for (int i = 0; i < hardK.size(); i++) {
+            Formula f = hardK.get(i);
+            if (i > 0 && Formula.sameVar(f, hardK.get(i - 1))) { //checking for duplicate entries
+                continue;
+            }
+            if (first) first = false;
+            else sb.append(',');
+            appendFormula(sb, f, false);
+        }
+        sb.append("}, {");
+
+        first = true;
+        for (int i = 0; i < justK.size(); i++) {
+            Formula f = justK.get(i);
+            if (i > 0 && f.equals(justK.get(i - 1))) {
+                continue;
+            }
+            if (first) first = false;
+            else sb.append(',');
+            appendFormula(sb, f, f.getQuantifier() == Formula.GENJUST);
+        }
+        sb.append("}, {");
+
+        first = true;
+        for (int i = 0; i < softK.size(); i++) {
+            Formula f = softK.get(i);
+            if (i > 0 && Formula.sameVar(f, softK.get(i - 1))) {
+                continue;
+            }
+            if (first) first = false;
+            else sb.append(',');
+            appendFormula(sb, f, false);
+        }
+        return sb.append("}>");
+    }
+}
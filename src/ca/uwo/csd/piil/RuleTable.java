@@ -0,0 +1,353 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>RuleTable</code> holds the tableau expansion rules of the connectives,
+ * built once when the class is loaded. A rule is indexed by the connective and
+ * the turnstile of a formula and lists the branches it produces; each branch
+ * lists the children to add, with their turnstile, type of knowledge and
+ * quantifier. Binary ions have a second table for nogood formulas
+ * <code>*(a, False)</code>. For example the rules of <code>&amp;</code> are
+ * <pre>
+ *   T a &amp; b      [[T a, T b]]
+ *   NT a &amp; b     [[NT a], [NT b]]
+ *   PT a &amp; b     [[PT a, PT b]]
+ *   NPT a &amp; b    [[NPT a], [NPT b]]
+ * </pre>
+ * Quantified formulas and atoms are handled by <code>Solver.applyRule</code>.
+ * @author Syeed Ibn Faiz
+ */
+class RuleTable {
+
+    /* Shortcuts */
+    private static final int T = Formula.TRUE;
+    private static final int NT = Formula.NOT_TRUE;
+    private static final int PT = Formula.POT_TRUE;
+    private static final int NPT = Formula.NOT_POT_TRUE;
+    private static final int U = Formula.UNIV;
+    private static final int E = Formula.EXIST;
+    private static final int S = Formula.SOFT;
+    private static final int J = Formula.JUST;
+    private static final int G = Formula.GENJUST;
+
+    public static final int INHERIT = 0;                //knowledge of the formula expanded
+
+    private static final int CONNECTIVES = 128;
+    private static final int SIGNS = 4;
+    private static final Child RULES[][][] = new Child[CONNECTIVES * SIGNS][][];
+    private static final Child NOGOOD_RULES[][][] = new Child[CONNECTIVES * SIGNS][][];
+
+    /**
+     * A child formula added by a rule.
+     */
+    static final class Child {
+
+        final int index;                //0 for the first child of the formula, 1 for the second
+        final int sign;
+        final int knowledge;            //INHERIT or a type of knowledge
+        final int qn;                   //NONE keeps the quantifier of the child
+        final boolean expanded;         //added already expanded
+
+        Child(int index, int sign, int knowledge, int qn, boolean expanded) {
+            this.index = index;
+            this.sign = sign;
+            this.knowledge = knowledge;
+            this.qn = qn;
+            this.expanded = expanded;
+        }
+
+        /**
+         * Creates this child of a formula being expanded.
+         * @param f
+         * @return
+         */
+        Formula instantiate(Formula f) {
+            Formula g = f.getChild(index);
+            int k = knowledge == INHERIT ? f.getKnowledgeType() : knowledge;
+            Formula h = qn == Formula.NONE
+                    ? new Formula(sign, k, g, f.getJPrefix())
+                    : new Formula(sign, k, g, qn, f.getJPrefix());
+            if (expanded) {
+                h.setExpanded(true);
+            }
+            return h;
+        }
+    }
+
+    static {
+        /* Negations */
+        unary('-', NPT, PT, NT, T);
+        unary('~', NT, T, NT, T);
+        unary('#', NPT, PT, NPT, PT);       //~'
+
+        /* bot */
+        put('@', T, of(c(0, PT), c(0, NT)));
+        put('@', NT, of(c(0, T)), of(c(0, NPT)));
+
+        /* Binary connectives */
+        put('&', T, of(c(0, T), c(1, T)));
+        put('&', NT, of(c(0, NT)), of(c(1, NT)));
+        put('&', PT, of(c(0, PT), c(1, PT)));
+        put('&', NPT, of(c(0, NPT)), of(c(1, NPT)));
+
+        put('|', T, of(c(0, T)), of(c(1, T)));
+        put('|', NT, of(c(0, NT), c(1, NT)));
+        put('|', PT, of(c(0, PT)), of(c(1, PT)));
+        put('|', NPT, of(c(0, NPT), c(1, NPT)));
+
+        put('>', T, of(c(0, NPT)), of(c(1, T)));
+        put('>', NT, of(c(0, PT), c(1, NT)));
+        put('>', PT, of(c(0, NT)), of(c(1, PT)));
+        put('>', NPT, of(c(0, T), c(1, NPT)));
+
+        put('!', T, of(c(0, T), c(1, T)));
+        put('!', NT, of(c(0, NT)), of(c(1, NT)));
+        put('!', PT, of(c(0, PT)), of(c(1, PT)));
+        put('!', NPT, of(c(0, NPT), c(1, NPT)));
+
+        /* Ion */
+        nogood('*', T, g(NPT));
+        nogood('*', NT, g(PT));
+        nogood('*', PT, g(NT));
+        nogood('*', NPT, g(T));
+        put('*', T, of(g(T), s(T)), of(g(NPT)));
+        put('*', NT, of(g(PT), g(NT), s(T)), of(g(PT), s(NT)));
+        put('*', PT, of(g(NT), s(NPT)), of(s(PT)));
+        put('*', NPT, of(g(T), s(NPT)));
+
+        /* Conditional ions */
+        condIon1('0', new int[]{    // Diamondsuit <>
+            NPT, U,         PT, E,      NPT, E,     PT, U,  //nogood
+            PT, U,  T,      NPT, U,                         //True
+            PT, E,  NPT, E, T, NT,                          //Not True
+            NPT, E, NPT, PT,                                //Potentially True
+            PT, U, NPT                                      //Not Potentially True
+        });
+        condIon1('1', new int[]{    // HeartSuit (^)
+            NT, U,      T, E,       NT, E,       T, E,  //nogood
+            T, U,       T,          NT, U,              //True
+            T, E,       NT, E,      T,    NT,           //Not True
+            NT, E,      NPT,        PT,                 //Potentially True
+            T, U,       NPT                             //Not Potentially True
+        });
+        condIon1('2', new int[]{    // Circle O
+            T , U,      T, E,       NT, E,       T, E,  //nogood
+            T, U,       T,          NPT, U,              //True
+            PT, E,      NT, E,      T,    NT,           //Not True
+            NT, E,      NPT,        PT,                 //Potentially True
+            T, U,       NPT                             //Not Potentially True
+        });
+        condIon1('5', new int[]{    // Blackfly (Bullet) o
+            NPT , U,    PT, E,      NT, U,       T, E,  //nogood
+            T, E,       T,          NPT, U,              //True
+            PT, E,      NT, U,      T,    NT,           //Not True
+            NT, U,      NPT,        PT,                 //Potentially True
+            T, E,       NPT                             //Not Potentially True
+        });
+        condIon1('8', new int[]{    // Butterfly (Bullet-twin) |><|
+            NPT , E,    PT, U,      NT, E,       T, U,  //nogood
+            T, U,       T,          NPT, E,              //True
+            PT, U,      NT, E,      T,    NT,           //Not True
+            NT, E,      NPT,        PT,                 //Potentially True
+            T, U,       NPT                             //Not Potentially True
+        });
+        condIon2('3', new int[]{    //Spadesuit
+            NPT , U,    PT, E,      NPT, U,       PT, E,  //nogood
+            NPT, E,     T,          NPT, U,               //True
+            PT, E,      NT,                               //Not True
+            NPT, U,     NPT,        PT,                   //Potentially True
+            PT, E,      NPT                               //Not Potentially True
+        });
+        condIon2('4', new int[]{    //Clubsuit
+            NT , U,    T, E,       NT, U,       T, E,    //nogood
+            T, E,      T,          NT, U,                //True
+            T, E,      NT,                               //Not True
+            NT, U,     NPT,        PT,                   //Potentially True
+            T, E,      NPT                               //Not Potentially True
+        });
+        condIon2('6', new int[]{    //Spadesuit-twin
+            NPT , E,    PT, U,       NPT, E,       PT, U,  //nogood
+            PT, U,      T,           NPT, E,               //True
+            PT, U,      NT,                                //Not True
+            NPT, E,     NPT,         PT,                   //Potentially True
+            PT, U,      NPT                                //Not Potentially True
+        });
+        condIon2('7', new int[]{    //Clubsuit-twin
+            NT , E,    T, U,       NT, E,       T, U,  //nogood
+            T, U,      T,           NT, E,               //True
+            T, U,      NT,                                //Not True
+            NT, E,     NPT,         PT,                   //Potentially True
+            T, U,      NPT                                //Not Potentially True
+        });
+    }
+
+    /**
+     * Returns the rule expanding a formula without quantifier.
+     * @param f a compound formula
+     * @return the branches produced, or <code>null</code> if no rule applies
+     */
+    static Child[][] lookup(Formula f) {
+        return lookup(f, f.getSign());
+    }
+
+    /**
+     * Returns the rule expanding a formula under a given turnstile.
+     * @param f a compound formula
+     * @param sign
+     * @return the branches produced, or <code>null</code> if no rule applies
+     */
+    static Child[][] lookup(Formula f, int sign) {
+        char cntv = f.getCntv();
+        if (cntv >= CONNECTIVES || sign < T || sign > NPT) {
+            return null;
+        }
+        int i = cntv * SIGNS + sign / 2;
+        if (NOGOOD_RULES[i] != null) {
+            Formula g2 = f.getChild(1);
+            if (g2.getType() == Formula.ATOMIC && g2.getVarId() == SymbolTable.FALSE_ID) {
+                return NOGOOD_RULES[i];
+            }
+        }
+        return RULES[i];
+    }
+
+    /**
+     * Adds the rules for conditional ion 0,1,2,5,8. Their structure differ from
+     * from the rest in the rule for NT formulas. Parameters are used as follows:
+     * <pre>
+     * T *0(f, false)   NT*0(f, false)    PT*0(f, false)   NPT*0(f, false)
+     * |                |                 |                |
+     * a0 f a1          a2 f a3           a4 f a5          a6 f a7
+     * <br>
+     *                   T *0(f1, f2)
+     *     -------------------------------------------
+     *    a8  f1 a9                         a11 f1 a12
+     *    a10 f2
+     *                  NT *0(f1, f2)
+     *                  |
+     *                  a13 f1 a14
+     *    ---------------------------------------------
+     *   a15 f1 a16                              a18 f2
+     *   a17 f2
+     *                  PT *0(f1, f2)
+     *   ----------------------------------------------
+     *   a19 f1 a20                              a22 f2
+     *   a21 f2
+     *                  NPT *0(f1, f2)
+     *                  |
+     *                  a23 f1 24
+     *                  a25 f2
+     * </pre>
+     * @param cntv
+     * @param a an array of length 26, containing all the parameters.
+     */
+    private static void condIon1(char cntv, int a[]) {
+        condIonNogood(cntv, a);
+        put(cntv, T, of(j(a[8], a[9]), s(a[10])), of(j(a[11], a[12])));
+        put(cntv, NT, of(j(a[13], a[14]), j(a[15], a[16]), s(a[17])), of(j(a[13], a[14]), s(a[18])));
+        put(cntv, PT, of(j(a[19], a[20]), s(a[21])), of(s(a[22])));
+        put(cntv, NPT, of(j(a[23], a[24]), s(a[25])));
+    }
+
+    /**
+     * Adds the rules for conditional ion 3,4,6,7. Parameters are used as follows:
+     * <pre>
+     * T *0(f, false)   NT*0(f, false)    PT*0(f, false)   NPT*0(f, false)
+     * |                |                 |                |
+     * a0 f a1          a2 f a3           a4 f a5          a6 f a7
+     * <br>
+     *                   T *0(f1, f2)
+     *     -------------------------------------------
+     *    a8  f1 a9                         a11 f1 a12
+     *    a10 f2
+     *                  NT *0(f1, f2)
+     *                  |
+     *                  a13 f1 a14
+     *                  a15 f2
+     * <br>
+     *                  PT *0(f1, f2)
+     *   ----------------------------------------------
+     *   a16 f1 a17                              a19 f2
+     *   a18 f2
+     *                  NPT *0(f1, f2)
+     *                  |
+     *                  a20 f1 21
+     *                  a22 f2
+     * </pre>
+     * @param cntv
+     * @param a an array of length 23, containing all the parameters.
+     */
+    private static void condIon2(char cntv, int a[]) {
+        condIonNogood(cntv, a);
+        put(cntv, T, of(j(a[8], a[9]), s(a[10])), of(j(a[11], a[12])));
+        put(cntv, NT, of(j(a[13], a[14]), s(a[15])));
+        put(cntv, PT, of(j(a[16], a[17]), s(a[18])), of(s(a[19])));
+        put(cntv, NPT, of(j(a[20], a[21]), s(a[22])));
+    }
+
+    private static void condIonNogood(char cntv, int a[]) {
+        nogood(cntv, T, j(a[0], a[1]));
+        nogood(cntv, NT, j(a[2], a[3]));
+        nogood(cntv, PT, j(a[4], a[5]));
+        nogood(cntv, NPT, j(a[6], a[7]));
+    }
+
+    /**
+     * Adds the rules of a negation, which never branches.
+     * @param cntv
+     * @param t turnstile of the child of a TRUE formula
+     * @param nt turnstile of the child of a NOT_TRUE formula
+     * @param pt turnstile of the child of a POT_TRUE formula
+     * @param npt turnstile of the child of a NOT_POT_TRUE formula
+     */
+    private static void unary(char cntv, int t, int nt, int pt, int npt) {
+        put(cntv, T, of(c(0, t)));
+        put(cntv, NT, of(c(0, nt)));
+        put(cntv, PT, of(c(0, pt)));
+        put(cntv, NPT, of(c(0, npt)));
+    }
+
+    private static void put(char cntv, int sign, Child[]... branches) {
+        RULES[cntv * SIGNS + sign / 2] = branches;
+    }
+
+    private static void nogood(char cntv, int sign, Child child) {
+        NOGOOD_RULES[cntv * SIGNS + sign / 2] = new Child[][]{of(child)};
+    }
+
+    private static Child[] of(Child... children) {
+        return children;
+    }
+
+    /**
+     * A child keeping the knowledge of the formula.
+     */
+    private static Child c(int index, int sign) {
+        return new Child(index, sign, INHERIT, Formula.NONE, false);
+    }
+
+    /**
+     * The justification of an ion, generic and already expanded.
+     */
+    private static Child g(int sign) {
+        return new Child(0, sign, J, G, true);
+    }
+
+    /**
+     * The justification of a conditional ion, with a quantifier.
+     */
+    private static Child j(int sign, int qn) {
+        return new Child(0, sign, J, qn, false);
+    }
+
+    /**
+     * The soft knowledge of an ion.
+     */
+    private static Child s(int sign) {
+        return new Child(1, sign, S, Formula.NONE, false);
+    }
+}
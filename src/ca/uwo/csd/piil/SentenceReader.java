@@ -0,0 +1,199 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+
+/**
+ * <code>SentenceReader</code> reads the sentences of an input file one at a
+ * time. The file is read through a channel in fixed size blocks and every
+ * character is looked at once: comments are removed and the text is split at
+ * <code>;</code> and line ends, so the whole input is never held in memory.
+ * Comments and lines are read as follows:
+ * <ul>
+ * <li>"\r\n", "\r" and "\n" all end a line,</li>
+ * <li>a comment ends at the first "*&#47;" after its "/*", so "/*&#47;" is a comment,</li>
+ * <li>a "/" just before a comment and a "*" just after it open a new comment,</li>
+ * <li>a comment which is not closed is not removed.</li>
+ * </ul>
+ * Sentences are returned as they are written; <code>Lexer</code> removes blanks
+ * and reads 2-character connectives.
+ * @author Syeed Ibn Faiz
+ */
+public class SentenceReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ReadableByteChannel channel;
+    private CharsetDecoder decoder;
+    private ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private boolean eof = false;                //the channel is exhausted
+    private boolean finished = false;           //all input has been read
+    private boolean cr = false;                 //last character read was \r
+
+    /* Comments */
+    private int slashes = 0;                    //slashes read but not passed on, the last one may open a comment
+    private StringBuilder comment = null;       //comment being read, null outside comments
+    private boolean star = false;               //last character of the comment was *
+
+    /* Sentences */
+    private StringBuilder sentence = new StringBuilder();
+    private ArrayDeque<String> sentences = new ArrayDeque<String>();
+
+    /**
+     * Opens a file encoded in the default charset of the platform.
+     * @param file
+     * @throws IOException
+     */
+    public SentenceReader(File file) throws IOException {
+        this(new FileInputStream(file).getChannel(), Charset.defaultCharset());
+    }
+
+    /**
+     * Reads sentences from a channel.
+     * @param channel
+     * @param charset encoding of the input
+     */
+    public SentenceReader(ReadableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars.flip();
+    }
+
+    /**
+     * Returns the next sentence of the input.
+     * @return a sentence, or <code>null</code> at the end of the input
+     * @throws IOException
+     */
+    public String nextSentence() throws IOException {
+        while (sentences.isEmpty() && !finished) {
+            if (!fill()) {
+                finish();
+                finished = true;
+                break;
+            }
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                if (c == '\n' && cr) {
+                    cr = false;
+                    continue;
+                }
+                cr = c == '\r';
+                read(cr ? '\n' : c);
+            }
+        }
+        return sentences.poll();
+    }
+
+    /**
+     * Closes the channel.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Decodes the next block of the input.
+     * @return false at the end of the input
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (!eof) {
+            int n = channel.read(bytes);
+            eof = n == -1;
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, eof);
+            if (eof) {
+                decoder.flush(chars);
+            }
+            bytes.compact();
+            if (chars.position() > 0 || result.isOverflow()) {
+                break;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    /**
+     * Removes comments.
+     * @param c next character of the input
+     */
+    private void read(char c) {
+        if (comment != null) {
+            comment.append(c);
+            if (c == '/' && star) {
+                comment = null;
+            }
+            star = c == '*';
+            return;
+        }
+        if (c == '/') {
+            slashes++;
+        } else if (c == '*' && slashes > 0) {
+            //the last slash opens a comment, the ones before may open others right after it
+            slashes--;
+            comment = new StringBuilder("/*");
+            star = true;
+        } else {
+            pass('/', slashes);
+            slashes = 0;
+            pass(c);
+        }
+    }
+
+    /**
+     * Passes on the characters waiting at the end of the input. A comment
+     * which is not closed is kept.
+     */
+    private void finish() {
+        pass('/', slashes);
+        slashes = 0;
+        if (comment != null) {
+            for (int i = 0; i < comment.length(); i++) {
+                pass(comment.charAt(i));
+            }
+            comment = null;
+        }
+        pass('\n');
+    }
+
+    private void pass(char c, int n) {
+        for (int i = 0; i < n; i++) {
+            pass(c);
+        }
+    }
+
+    /**
+     * Splits the text without comments into sentences.
+     * @param c
+     */
+    private void pass(char c) {
+        if (c == ';' || c == '\n') {
+            if (sentence.length() > 0) {
+                sentences.add(sentence.toString());
+                sentence.setLength(0);
+            }
+        } else {
+            sentence.append(c);
+        }
+    }
+}
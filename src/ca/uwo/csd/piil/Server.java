@@ -0,0 +1,235 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package ca.uwo.csd.piil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Server class. It keeps a JVM running and solves the problems sent to a local
+ * TCP port, so that the JVM start up cost is paid only once. The protocol is the
+ * following:
+ * <ul>
+ * <li>A client connects to the port on the loopback address and sends the text
+ * of one problem, in UTF-8, in the same format as an input file of <code>Main</code>.</li>
+ * <li>The client closes its side of the connection for writing (or the whole
+ * connection) to mark the end of the problem.</li>
+ * <li>The server parses and solves the problem and sends back, in UTF-8, what
+ * <code>Main</code> would write in the output file, then closes the connection.
+ * Errors are sent back as a single line starting with "Exception occured".</li>
+ * </ul>
+ * Problems are solved by a fixed pool of threads. At most <code>threads</code>
+ * problems are solved and <code>queue</code> connections wait at the same time;
+ * then no more connections are accepted until one is finished, so further
+ * clients wait in the backlog of the port. Results are kept in a
+ * <code>ResultCache</code>, so a problem sent again is answered at once. The
+ * limits and the memo of closed branches are set as for <code>Main</code>.
+ * @author Syeed Ibn Faiz
+ */
+public class Server {
+
+    public static final int DEFAULT_PORT = 7171;
+    public static final int READ_TIMEOUT = 60000;      //milliseconds a client may take to send its problem
+    public static final int DEFAULT_CACHE_ENTRIES = 1024;
+    public static final long DEFAULT_CACHE_FORMULAS = 1 << 20;
+
+    private int port;
+    private int threads;
+    private boolean parallel;
+    private SolverOptions options;
+    private ResultCache cache;                          //results of recent problems, may be null
+    private Semaphore permits;                          //connections being served or waiting
+    private ExecutorService pool;
+    private ServerSocket serverSocket;
+
+    /**
+     * Constructs a server.
+     * @param port local port to listen to, 0 for any free port
+     * @param threads number of problems solved at the same time
+     * @param queue number of connections allowed to wait for a thread
+     * @param parallel whether each problem is solved in parallel too
+     * @param options limits of the solver
+     */
+    public Server(int port, int threads, int queue, boolean parallel, SolverOptions options) {
+        this.port = port;
+        this.threads = threads;
+        this.parallel = parallel;
+        this.options = options;
+        this.permits = new Semaphore(threads + queue);
+    }
+
+    /**
+     * Sets the cache of results shared by all connections.
+     * @param cache a cache, or <code>null</code> to solve every problem
+     */
+    public void setCache(ResultCache cache) {
+        this.cache = cache;
+    }
+
+    public ResultCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Opens the port. Connections are accepted by <code>serve</code>.
+     * @return the port actually opened
+     * @throws IOException
+     */
+    public int open() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        pool = Executors.newFixedThreadPool(threads);
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections and solves their problems until the server is closed.
+     * @throws IOException
+     */
+    public void serve() throws IOException {
+        if (serverSocket == null) {
+            open();
+        }
+        try {
+            while (!serverSocket.isClosed()) {
+                permits.acquireUninterruptibly();
+                final Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException ex) {
+                    permits.release();
+                    if (serverSocket.isClosed()) {
+                        break;
+                    }
+                    throw ex;
+                }
+                pool.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            handle(socket);
+                        } finally {
+                            permits.release();
+                        }
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Stops accepting connections. Problems being solved are finished.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+    }
+
+    /**
+     * Solves the problem sent over a connection and sends back the result.
+     * @param socket
+     */
+    private void handle(Socket socket) {
+        try {
+            ResultWriter writer = null;
+            try {
+                socket.setSoTimeout(READ_TIMEOUT);
+                SentenceReader reader = new SentenceReader(Channels.newChannel(socket.getInputStream()), ResultWriter.UTF8);
+                writer = new ResultWriter(socket.getOutputStream(), ResultWriter.UTF8);
+
+                ArrayList<Formula> fList = new Parser().parse(reader);
+                Solver solver = new Solver();
+                solver.setParallel(parallel);
+                solver.setOptions(options);
+                if (cache != null) {
+                    ResultCache.Entry e = cache.solve(solver, fList);
+                    writer.writeResult(fList, e.getModels(), e.isTruncated(), e.getOrdering());
+                } else {
+                    ArrayList<Interpretation> result = solver.solve(fList);
+                    Ordering ordering = new Ordering(result);
+                    ordering.setParallel(parallel);
+                    writer.writeResult(fList, result, solver.isTruncated(), ordering);
+                }
+            } catch (Exception ex) {
+                if (writer != null) {
+                    writer.write("Exception occured : " + ex.getMessage() + "\n");
+                }
+            } finally {
+                if (writer != null) {
+                    writer.flush();
+                }
+                socket.close();
+            }
+        } catch (IOException ex) {
+            //the client is gone
+        }
+    }
+
+    public static void main(String args[]) {
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int queue = -1;                                 //4 * threads if not given
+        boolean parallel = false;
+        int cacheEntries = DEFAULT_CACHE_ENTRIES;
+        long cacheFormulas = DEFAULT_CACHE_FORMULAS;
+        SolverOptions options = new SolverOptions();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-port") && i + 1 < args.length) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-queue") && i + 1 < args.length) {
+                    queue = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-cache") && i + 1 < args.length) {
+                    cacheEntries = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-cacheformulas") && i + 1 < args.length) {
+                    cacheFormulas = Long.parseLong(args[++i]);
+                } else if (args[i].equals("-parallel")) {
+                    parallel = true;
+                } else if (args[i].equals("-timeout") && i + 1 < args.length) {
+                    options.setTimeLimit(Long.parseLong(args[++i]));
+                } else if (args[i].equals("-maxmodels") && i + 1 < args.length) {
+                    options.setMaxModels(Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-memo") && i + 1 < args.length) {
+                    options.setMemoSize(Integer.parseInt(args[++i]));
+                } else {
+                    throw new NumberFormatException();
+                }
+            }
+        } catch (NumberFormatException ex) {
+            threads = 0;
+        }
+        if (queue == -1) {
+            queue = 4 * threads;
+        }
+        if (threads < 1 || queue < 0) {
+            System.out.println("Usage java -cp pil.jar ca.uwo.csd.piil.Server [-port n] [-threads n] [-queue n] [-cache entries] [-cacheformulas n] [-parallel] [-timeout milliseconds] [-maxmodels n] [-memo n]");
+            return;
+        }
+
+        Server server = new Server(port, threads, queue, parallel, options);
+        if (cacheEntries > 0) {
+            server.setCache(new ResultCache(cacheEntries, cacheFormulas));
+        }
+        try {
+            System.out.println("Listening on port " + server.open() + ".");
+            server.serve();
+        } catch (IOException ex) {
+            System.out.println("Exception occured : " + ex.getMessage());
+        }
+    }
+}
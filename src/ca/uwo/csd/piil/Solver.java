@@ -4,8 +4,24 @@
  */
 package ca.uwo.csd.piil;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Solver class implements methods to produce interpretation scheme/pattern for
@@ -25,7 +41,7 @@ import java.util.HashMap;
  *                          /            \
  *           expand([NPT b, NPT a])   expand([NPT b, T b])
  *                 |                             |
- *     checkClosure([NPT b, NPT a])   checkClosure([NPT b, T b])
+ *     checkClosure([NPT b, NPT a])           closed
  *                 |                             |
  *       <{NPT b, NPT a}, {}, {}>               null
  * </pre>
@@ -33,14 +49,116 @@ import java.util.HashMap;
  */
 public class Solver {
 
+    /* Parallel solving */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 8;
+
+    private boolean parallel = false;
+    private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    private static final Branch NO_BRANCHES[] = new Branch[0];
+
+    /* Limits */
+    private SolverOptions options = new SolverOptions();
+    private Budget budget = new Budget(options);        //limits of the last search
+
     /**
      * Produces interpretation schemes for a set of PPIIL formulas. It rearranges
      * the content of the list so that the non-branching formulas precede the
-     * branching ones. Then the new list is expanded using <code>expand</code>.
+     * branching ones. Then the new list is expanded using <code>expand</code>
+     * in parallel mode, or by the iterative engine otherwise. The
+     * search stops when a limit of the options is reached. Open branches with
+     * the same literals give one scheme; the limit on the number of models
+     * counts distinct schemes. In parallel mode that limit keeps the first
+     * schemes in the order of the tableau, so the result is the same as that of
+     * a sequential depth-first search.
      * @param list a list of PPIIL formulas
-     * @return a set of interpretation schemes
+     * @return a set of interpretation schemes, or <code>null</code> if there is none
      */
     public ArrayList<Interpretation> solve(ArrayList<Formula> list) {
+        Branch branch = initialBranch(list);
+        budget = new Budget(options);
+        ArrayList<Interpretation> result = null;
+        if (parallel) {
+            //justification symbols are numbered once the tableau is complete, in the
+            //order a sequential expansion would have created them
+            SymbolGenerator symbols = new SymbolGenerator();
+            Schemes schemes = ForkJoinPool.commonPool().invoke(new ExpandTask(branch, symbols, budget, null));
+            symbols.number();
+            if (schemes.isFull() && schemes.more) {
+                budget.truncate();
+            }
+            result = schemes.list.isEmpty() ? null : merge(schemes.list);
+        } else {
+            result = drain(new ModelIterator(branch, budget));
+        }
+        return result;
+    }
+
+    /**
+     * Finds one interpretation scheme for a set of PPIIL formulas. The search
+     * stops at the first open branch. Sequential solving returns the first
+     * scheme of <code>solve</code>; in parallel mode the subtrees being expanded
+     * are cancelled as soon as any task finds an open branch, so the scheme
+     * returned may be any of them.
+     * @param list a list of PPIIL formulas
+     * @return an interpretation scheme, or <code>null</code> if the formulas are unsatisfiable
+     */
+    public Interpretation findFirstModel(List<Formula> list) {
+        Branch branch = initialBranch(new ArrayList<Formula>(list));
+        budget = new Budget(options);
+        if (parallel) {
+            SymbolGenerator symbols = new SymbolGenerator();
+            Interpretation result = ForkJoinPool.commonPool().invoke(new SearchTask(branch, symbols, budget));
+            symbols.number();
+            return result;
+        }
+        Iterator<Interpretation> models = new ModelIterator(branch, budget);
+        return models.hasNext() ? models.next() : null;
+    }
+
+    /**
+     * Tests whether a set of PPIIL formulas has an interpretation scheme,
+     * stopping at the first open branch.
+     * @param list a list of PPIIL formulas
+     * @return
+     */
+    public boolean isSatisfiable(List<Formula> list) {
+        return findFirstModel(list) != null;
+    }
+
+    /**
+     * Produces the interpretation schemes for a set of PPIIL formulas lazily.
+     * The tableau is expanded only as far as needed to find the next open
+     * branch, so the first scheme is available as soon as its branch is
+     * complete. Schemes come in the same order as in the result of
+     * <code>solve</code>. Expansion is always sequential.
+     * @param list a list of PPIIL formulas
+     * @return an iterator over the interpretation schemes
+     */
+    public Iterator<Interpretation> iterator(ArrayList<Formula> list) {
+        Branch branch = initialBranch(list);
+        budget = new Budget(options);
+        return new ModelIterator(branch, budget);
+    }
+
+    /**
+     * Produces the interpretation schemes for a set of PPIIL formulas as a
+     * lazy sequential stream. See <code>iterator</code>.
+     * @param list a list of PPIIL formulas
+     * @return a stream of interpretation schemes
+     */
+    public Stream<Interpretation> stream(ArrayList<Formula> list) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(list),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Builds the root branch of the tableau of a list of formulas, with the
+     * non-branching formulas preceding the branching ones.
+     * @param list
+     * @return
+     */
+    private Branch initialBranch(ArrayList<Formula> list) {
         ArrayList<Formula> branchingList = new ArrayList<Formula>();
         ArrayList<Formula> nonBranchingList = new ArrayList<Formula>();
         for (Formula f : list) {
@@ -50,925 +168,849 @@ public class Solver {
                 nonBranchingList.add(f);
             }
         }
+        int n = nonBranchingList.size();
         nonBranchingList.addAll(branchingList);
-        list = nonBranchingList;
+        ArrayList<Formula> interned = intern(nonBranchingList);
+        Branch branch = new Branch(new ArrayList<Formula>(interned.subList(0, n)));
+        return appendBranching(branch, interned.subList(n, interned.size()));
+    }
 
-        return expand(list);
+    /**
+     * Makes sure all the formulas of a list are built on nodes of one
+     * <code>FormulaFactory</code>, so that the closure rules can compare their
+     * structures by reference. Lists produced by one <code>Parser.parse</code>
+     * call already are.
+     * @param list
+     * @return <code>list</code> or an equivalent list of interned formulas
+     */
+    private ArrayList<Formula> intern(ArrayList<Formula> list) {
+        boolean shared = true;
+        for (int i = 0; i < list.size() && shared; i++) {
+            shared = Formula.sameFactory(list.get(0), list.get(i));
+        }
+        if (shared) {
+            return list;
+        }
+        FormulaFactory factory = new FormulaFactory();
+        ArrayList<Formula> result = new ArrayList<Formula>(list.size());
+        for (Formula f : list) {
+            Formula g = new Formula(f.getSign(), f.getKnowledgeType(), factory.intern(f), f.getQuantifier(), f.getJPrefix());
+            g.setExpanded(f.isExpanded());
+            result.add(g);
+        }
+        return result;
     }
 
     /**
-     * Expands a branch of a tableau. <code>list</code> represents a branch in the
-     * tableau. <code>expand</code> finds the first formula in the branch for which
-     * expansion rule can be applied and which is not already extended(used before).
-     * If this formula is branching then <code>expand</code> calls itself twice for
-     * each branch and merges the result of each of them. Otherwise if this formula
-     * does not create branch then <code>expand</code> calls itself recursively for
-     * the updated branch and return the result.
-     * @param list a list of formulas in a branch of tableau
-     * @return set of interpretation schemes
+     * Enables or disables parallel solving. In parallel mode the two branches
+     * created by a branching rule are expanded as fork/join tasks. The result is
+     * the same as that of sequential depth-first solving; a breadth-first
+     * search gives the same schemes in another order.
+     * @param parallel
      */
-    private ArrayList<Interpretation> expand(ArrayList<Formula> list) {
-        boolean expanded = false;
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
 
-        /*System.out.print("Expanding: [ ");
-        for(Formula f: list) {
-            if (!f.isExpanded()) System.out.print(f + " ");
-        }
-        System.out.println("]");*/
+    public boolean isParallel() {
+        return parallel;
+    }
 
-        for (int i = 0; i < list.size(); i++) {
-            if (!list.get(i).isExpanded()) {                        //applyRule marks formulas once rule is applied for them
-                ArrayList<ArrayList<Formula>> ll = null;
-                ll = applyRule(list.get(i));
-                if (ll == null || ll.isEmpty()) {                   //e.g. applyRule(PT bot(a)) returns an empty list
-                    continue;
-                } else if (ll.size() == 1) {                        //e.g. applyRule(NPT a -> b)
-                    expanded = true;
-                    ArrayList<Formula> oldList = new ArrayList<Formula>(list);
-                    list = addAll(list, ll.get(0));
-                    ArrayList<Interpretation> result = expand(list);
-
-                    list = oldList = null;
-                    return result;
-                } else if (ll.size() == 2) {                        //e.g. applyRule(T a -> b)
-                    expanded = true;                    
-
-                    ArrayList<Formula> oldList = list;              //keeping exact set of references
-                    boolean exp[] = new boolean[oldList.size()];
-                    //saving expansion info to restore for right branch
-                    for(int j = 0; j < oldList.size(); j++) {
-                        exp[j] = oldList.get(j).isExpanded();
-                    }
-                    
-                    list = new ArrayList<Formula>(oldList);
-                    list = addAll(list, ll.get(0));
-                    ArrayList<Interpretation> result1 = expand(list);
-
-                    //restoring expansion status for formulas
-                    for(int j = 0; j < oldList.size(); j++) {
-                        oldList.get(j).setExpanded(exp[j]);
-                    }
-                    list = new ArrayList<Formula>(oldList);
-                    list = addAll(list, ll.get(1));
-                    ArrayList<Interpretation> result2 = expand(list);
-
-                    list = oldList = null;                                     //releasing references
-                    if (result1 == null) {
-                        return result2;
-                    } else if (result2 == null) {
-                        return result1;
-                    } else {
-                        result1.addAll(result2);
-                        return result1;
-                    }
+    /**
+     * Sets the minimum number of unexpanded formulas a branch must have for
+     * its subtrees to be expanded in parallel. Smaller branches are expanded
+     * sequentially.
+     * @param parallelThreshold
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the limits of the searches of this solver.
+     * @param options
+     */
+    public void setOptions(SolverOptions options) {
+        this.options = options;
+    }
+
+    public SolverOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Tests whether the last search was stopped by a limit before the whole
+     * tableau was explored. Its result may then be incomplete.
+     * @return
+     */
+    public boolean isTruncated() {
+        return budget.isTruncated();
+    }
+
+    /**
+     * Expands a branch of a tableau in parallel. <code>branch</code> represents
+     * a branch in the tableau. <code>expand</code> applies expansion rules to the
+     * branch until the formula being expanded is branching. Then, if the left
+     * branch is large enough, the right branch is expanded by a forked task
+     * while the left one is expanded by the current thread; the results of both
+     * branches are merged, left one first. Both branches share the structure
+     * of <code>branch</code>, so nothing is copied at a split. Branches too
+     * small to be worth a task are expanded by the iterative engine, so the
+     * depth of the Java stack only grows with the number of nested forks.
+     * <p>
+     * With a limit on the number of models, a subtree keeps only its first
+     * distinct schemes. Once the left branch alone reaches the limit, the
+     * right one is abandoned: a sequential search would have stopped before it.
+     * @param branch a branch of tableau
+     * @param symbols creates the justification symbols
+     * @param budget limits of the search
+     * @param task the task expanding <code>branch</code>
+     * @return the interpretation schemes of the subtree
+     */
+    private Schemes expand(Branch branch, SymbolGenerator symbols, Budget budget, ExpandTask task) {
+        while (branch.countUnexpanded() >= parallelThreshold) {
+            if (task.isAbandoned() || !budget.step(branch)) {
+                return new Schemes(true);
+            }
+            Branch next[] = successors(branch, symbols);
+            if (next == null) {                                     //fully expanded and open
+                Schemes result = new Schemes(false);
+                ArrayList<Interpretation> l = checkClosure(branch.getFormulas());
+                if (l != null) {
+                    result.add(l.get(0));
+                }
+                return result;
+            } else if (next.length == 0) {                          //closed
+                return new Schemes(true);
+            } else if (next.length == 1) {                          //e.g. applyRule(NPT a -> b)
+                branch = next[0];
+                continue;
+            }
+            //e.g. applyRule(T a -> b)
+            BranchKey leftKey = budget.memo.key(next[0]);
+            BranchKey rightKey = budget.memo.key(next[1]);
+            if (budget.memo.isClosed(leftKey)) {
+                if (budget.memo.isClosed(rightKey)) {
+                    return new Schemes(true);
+                }
+                branch = next[1];
+                continue;
+            } else if (budget.memo.isClosed(rightKey)) {
+                branch = next[0];
+                continue;
+            }
+            ExpandTask rightTask = new ExpandTask(next[1], symbols.fork(), budget, task);
+            rightTask.fork();
+            ExpandTask leftTask = new ExpandTask(next[0], symbols.fork(), budget, task);
+            Schemes result1 = leftTask.compute();
+            if (result1.isFull()) {
+                //truncated first, so that the subtrees abandoned are not taken for closed
+                budget.truncate();
+                rightTask.abandon();
+            }
+            Schemes result2 = rightTask.join();
+            symbols.join(leftTask.symbols);
+            symbols.join(rightTask.symbols);
+            if (budget.isComplete()) {
+                if (result1.list.isEmpty()) {
+                    budget.memo.addClosed(leftKey);
                 }
+                if (result2.list.isEmpty()) {
+                    budget.memo.addClosed(rightKey);
+                }
+            }
+
+            if (result1.isFull()) {
+                result1.more = true;
+            } else {
+                result1.addAll(result2);
             }
+            return result1;
         }
-        if (expanded == false) {
-            return checkClosure(list);
+        return collect(new ModelIterator(branch, budget, symbols, task));
+    }
+
+    /**
+     * Collects the interpretation schemes of a subtree expanded by the
+     * iterative engine for <code>expand</code>, up to the limit on the number
+     * of models.
+     * @param models
+     * @return the interpretation schemes of the subtree
+     */
+    private Schemes collect(ModelIterator models) {
+        Schemes result = new Schemes(false);
+        int steps = 0;                                      //steps taken up to the last scheme kept
+        while (!result.isFull() && models.hasNext()) {
+            if (result.add(models.next())) {
+                steps = models.steps;
+            }
         }
-        return null;
+        if (result.isFull()) {
+            result.more = models.hasWork();
+            if (result.more) {
+                models.budget.truncate();
+            }
+        } else {
+            result.more = models.steps > steps;
+        }
+        return result;
+    }
 
+    /**
+     * Collects the interpretation schemes of an iterator.
+     * @param models
+     * @return a list of interpretation schemes, or <code>null</code> if there is none
+     */
+    private ArrayList<Interpretation> drain(Iterator<Interpretation> models) {
+        ArrayList<Interpretation> result = null;
+        while (models.hasNext()) {
+            if (result == null) {
+                result = new ArrayList<Interpretation>();
+            }
+            result.add(models.next());
+        }
+        return result;
     }
 
     /**
-     * Checks whether a branch is closed or not.
-     * @param list a set of formulas representing a branch of tableau
-     * @return null if the branch is closed, otherwise an interpretation
-     * satisfying the branch.
+     * Removes the interpretation schemes equal to an earlier one. Different
+     * branches often end with the same literals.
+     * @param models
+     * @return the distinct schemes, in order
      */
-    private ArrayList<Interpretation> checkClosure(ArrayList<Formula> list) {
-                
-        if (list == null || list.isEmpty()) {            
+    private ArrayList<Interpretation> merge(ArrayList<Interpretation> models) {
+        if (models == null) {
             return null;
         }
+        HashSet<Interpretation> seen = new HashSet<Interpretation>();
+        ArrayList<Interpretation> result = new ArrayList<Interpretation>(models.size());
+        for (Interpretation i : models) {
+            if (seen.add(i)) {
+                result.add(i);
+            }
+        }
+        return result;
+    }
 
-        /*System.out.printf("{");
-        boolean first = true;
-        for (int i = 0; i < list.size(); i++) {
-            if (list.get(i).getType() != Formula.ATOMIC || list.get(i).getQuantifier() != Formula.NONE) {
+    /**
+     * Performs one expansion step on a branch: rules are applied to the
+     * unexpanded formulas of the branch, in order, until one of them extends
+     * or splits the branch. The branches returned are one level deeper.
+     * @param branch a branch of tableau
+     * @param symbols creates the justification symbols
+     * @return the branches replacing <code>branch</code>, left one first; an
+     * empty array if <code>branch</code> is closed, and <code>null</code> if it
+     * is open and fully expanded
+     */
+    private Branch[] successors(Branch branch, SymbolGenerator symbols) {
+        if (branch.isClosed()) {
+            return NO_BRANCHES;
+        }
+        Formula f;
+        while ((f = branch.firstUnexpanded()) != null) {
+            branch = branch.expandFirst();                          //formulas are marked once rule is applied for them
+            ArrayList<ArrayList<Formula>> ll = applyRule(f, symbols);
+            if (ll == null || ll.isEmpty()) {                       //e.g. applyRule(PT bot(a)) returns an empty list
                 continue;
             }
-            if (!first) {
-                System.out.printf(",");
-            } else first = false;
-            System.out.printf("%s ", list.get(i));
+            branch = branch.descend();
+            if (ll.size() == 1) {
+                return new Branch[]{addAll(branch, ll.get(0))};
+            } else {
+                return new Branch[]{addAll(branch, ll.get(0)), addAll(branch, ll.get(1))};
+            }
         }
-        System.out.printf("}\n");*/
+        return null;
+    }
 
-        ArrayList<Formula> atomList = new ArrayList<Formula>();
-        for (int i = 0; i < list.size(); i++) {
-            //pick all atomic formulas unless they are canonical justification formulas
-            //generic justification formulas are not included
-            if (list.get(i).getType() == Formula.ATOMIC && (list.get(i).getQuantifier() == Formula.NONE /*|| list.get(i).getQuantifier() == Formula.GENJUST*/)) {
-                if (list.get(i).getVar().equalsIgnoreCase("False") && (list.get(i).getSign() != Formula.NOT_POT_TRUE && list.get(i).getSign() != Formula.NOT_TRUE)) {
-                    return null;
-                    
-                } else if (list.get(i).getVar().equalsIgnoreCase("True") && (list.get(i).getSign() != Formula.TRUE && list.get(i).getSign() != Formula.POT_TRUE)) {
+    /**
+     * Searches a branch of a tableau in parallel until an open branch is found
+     * or the search is finished by another task. The right branch of a split
+     * is forked if the left one is large enough; the task is cancelled when
+     * the left branch turns out to be open. Small branches are searched by the
+     * iterative engine.
+     * @param branch a branch of tableau
+     * @param symbols creates the justification symbols
+     * @param budget limits of the search, finished once a scheme is found
+     * @return an interpretation scheme, or <code>null</code> if none was found
+     */
+    private Interpretation search(Branch branch, SymbolGenerator symbols, Budget budget) {
+        while (branch.countUnexpanded() >= parallelThreshold) {
+            if (!budget.step(branch)) {
+                return null;
+            }
+            Branch next[] = successors(branch, symbols);
+            if (next == null) {                                     //fully expanded and open
+                ArrayList<Interpretation> l = checkClosure(branch.getFormulas());
+                if (l == null) {                                    //empty branch, no scheme
                     return null;
-
-                } else if (!list.get(i).getVar().equalsIgnoreCase("True") && !list.get(i).getVar().equalsIgnoreCase("False")) {
-                    atomList.add(list.get(i));
                 }
-            } else if (list.get(i).getCntv() == '@' && list.get(i).getSign() == Formula.NOT_POT_TRUE) {
-                //NPT bot(a) -> closed
+                budget.finish();
+                return l.get(0);
+            } else if (next.length == 0) {
                 return null;
+            } else if (next.length == 1) {
+                branch = next[0];
+                continue;
             }
-        }
-
-        
-        int T = Formula.TRUE;               //0000
-        int NT = Formula.NOT_TRUE;          //0010
-        int PT = Formula.POT_TRUE;          //0100
-        int NPT = Formula.NOT_POT_TRUE;     //0110
-        int H = Formula.HARD;
-        int S = Formula.SOFT;
-        int J = Formula.JUST;
-        int G = Formula.GENJUST;
-
-        //closure rules not involving the generic operator
-        for (int i = 0; i < atomList.size(); i++) {
-            Formula a1 = atomList.get(i);
-            for (int j = 0; j < atomList.size(); j++) {
-                if (i == j) continue;
-                
-                Formula a2 = atomList.get(j);
-                if (a1.getVar().equalsIgnoreCase(a2.getVar())) {
-
-                    int sign1 = a1.getSign();
-                    int sign2 = a2.getSign();
-
-                    if (prefixMatches(a1.getJPrefix(), a2.getJPrefix())) {              //8.3.4 (i) generalized closure rule
-                        //if ((a1.getQuantifier() != G || a2.getKnowledgeType() != S) && (a1.getKnowledgeType() != S || a2.getQuantifier() != G)) {
-                            if ((sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT) ) return null;
-                        //}
-
-                    } else if (prefixEndsWith(a2.getJPrefix(), a1.getJPrefix())) {
-                        if (a1.getKnowledgeType() != S && a2.getKnowledgeType() != S) { //8.3.4 (ii) jKnowledge extends hKnowledge
-                            if ((sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT)) return null;
-
-                        } else if (a2.getKnowledgeType() == S) {                        //8.3.4 (iii) sKnowledge extends hKnowledge
-                            if ((sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT)) return null;
-                        }
-                    }
+            BranchKey leftKey = budget.memo.key(next[0]);
+            BranchKey rightKey = budget.memo.key(next[1]);
+            if (budget.memo.isClosed(leftKey)) {
+                if (budget.memo.isClosed(rightKey)) {
+                    return null;
                 }
+                branch = next[1];
+                continue;
+            } else if (budget.memo.isClosed(rightKey)) {
+                branch = next[0];
+                continue;
             }
-        }        
-        //System.out.println("Not closed without generic.");
-        //closure rule involving generic operator
-        for (int i = 0; i < list.size(); i++) {
-            Formula f1 = list.get(i);
-            int sign1 = f1.getSign();
-            if (f1.getType() == Formula.ATOMIC && f1.getVar().equalsIgnoreCase("False") && (f1.getSign() != Formula.NOT_POT_TRUE && f1.getSign() != Formula.NOT_TRUE)) {
-                return null;
-            } else if (f1.getType() == Formula.ATOMIC && f1.getVar().equalsIgnoreCase("True") && (f1.getSign() != Formula.TRUE && f1.getSign() != Formula.POT_TRUE)) {
-                return null;
+            SearchTask rightTask = new SearchTask(next[1], symbols.fork(), budget);
+            rightTask.fork();
+            Interpretation result = search(next[0], symbols, budget);
+            if (result != null) {
+                rightTask.cancel(false);
+            } else if (budget.isComplete()) {
+                budget.memo.addClosed(leftKey);
+            }
+            if (!rightTask.isCancelled()) {
+                Interpretation result2 = rightTask.join();
+                symbols.join(rightTask.symbols);
+                if (result == null) {
+                    result = result2;
+                }
+                if (result2 == null && budget.isComplete()) {
+                    budget.memo.addClosed(rightKey);
+                }
             }
-            for (int j = 0; j < list.size(); j++) {
-                if (i == j) continue;
-                Formula f2 = list.get(j);
-                int sign2 = f2.getSign();
+            return result;
+        }
+        Iterator<Interpretation> models = new ModelIterator(branch, budget, symbols, null);
+        if (models.hasNext()) {
+            budget.finish();
+            return models.next();
+        }
+        return null;
+    }
+
+    /**
+     * Fork/join task searching one branch of a tableau for an open branch.
+     */
+    private class SearchTask extends RecursiveTask<Interpretation> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Branch branch;
+        private SymbolGenerator symbols;
+        private Budget budget;
+
+        SearchTask(Branch branch, SymbolGenerator symbols, Budget budget) {
+            this.branch = branch;
+            this.symbols = symbols;
+            this.budget = budget;
+        }
+
+        @Override
+        protected Interpretation compute() {
+            return search(branch, symbols, budget);
+        }
+    }
+
+    /**
+     * Iterative tableau engine. Branches waiting to be expanded are kept in an
+     * explicit deque instead of the Java stack, so the depth of a tableau is
+     * not limited by the stack size, and the interpretation schemes are
+     * produced lazily. Depth-first order keeps the left branch of a split on
+     * top of a stack and finds open branches in the same order as a recursive
+     * expansion; breadth-first order expands the tableau level by level, which
+     * finds short open branches first.
+     * <p>
+     * Justification symbols are either numbered as soon as they are created or,
+     * if a generator is given, left to be numbered by its owner. In the first
+     * case a scheme equal to one found before is skipped, and only the first of
+     * equal schemes counts as a model and as an open branch. In the second
+     * every open branch gives its scheme; the owner merges them and applies
+     * the limit on the number of models.
+     * <p>
+     * In depth-first order the subtree of a branch is finished when the stack
+     * shrinks below it again; if it had no open branch, the branch is recorded
+     * in the memo of closed branches, and branches found there are not pushed.
+     */
+    private class ModelIterator implements Iterator<Interpretation> {
+
+        private ArrayDeque<Branch> agenda = new ArrayDeque<Branch>();
+        private ArrayDeque<Mark> marks = new ArrayDeque<Mark>();  //subtrees being expanded, innermost first
+        private int open = 0;                               //open branches found with a new scheme
+        private boolean breadthFirst;
+        private SymbolGenerator symbols;
+        private boolean numbering;                          //number symbols when created
+        private Budget budget;
+        private ExpandTask task;                            //the task using the iterator, if any
+        private int steps = 0;                              //branches taken from the agenda
+        private Interpretation next;
+
+        ModelIterator(Branch root, Budget budget) {
+            this(root, budget, null, null);
+        }
 
-                if ((f1.getKnowledgeType()==H && f1.getRank() == 0) && f2.getQuantifier()==G && equals(f1, f2)) {  //Theorem 8.3.7
-                    if ((sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT)) {
-                        //System.out.println("Theorem 8.3.7");
-                        return null;
+        ModelIterator(Branch root, Budget budget, SymbolGenerator symbols, ExpandTask task) {
+            this.budget = budget;
+            this.task = task;
+            this.breadthFirst = options.getSearchOrder() == SolverOptions.BREADTH_FIRST;
+            this.numbering = symbols == null;
+            this.symbols = numbering ? new SymbolGenerator() : symbols;
+            agenda.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !agenda.isEmpty()) {
+                if (task != null && task.isAbandoned()) {
+                    agenda.clear();
+                    marks.clear();
+                    break;
+                }
+                finishSubtrees();
+                Branch branch = agenda.pop();
+                steps++;
+                if (!budget.step(branch)) {
+                    if (budget.isStopped()) {
+                        agenda.clear();
                     }
-                } else if ((f1.getKnowledgeType()==H && f1.getRank() == 0) && f2.getQuantifier()==G && (f2.getCntv()=='-' && equals(f1, f2.getChild(0)))) {  //Theorem 8.3.7 equivalent variant
-                    if ((sign1==NPT && (sign2==NPT || sign2==NT)) || (sign1==T && (sign2==T || sign2==PT))) {
-                        //System.out.println("Here");
-                        return null;
+                    continue;
+                }
+                Branch succ[] = successors(branch, symbols);
+                if (numbering) {
+                    symbols.number();
+                }
+                if (succ == null) {
+                    ArrayList<Interpretation> l = checkClosure(branch.getFormulas());
+                    if (l == null) {
+                        continue;
                     }
-                    
-                } else if (f1.getQuantifier() == G && f2.getQuantifier() == G) {    //Theorem 8.3.8
-                    if ( equals(f1, f2) && ((sign1^sign2) == 2 || (sign1 == T && sign2 == NPT) || (sign2 == T && sign1 == NPT))) {
-                        //System.out.println("Theorem 8.3.8_1, " + f1 + ": " + f1.getQuantifier() + ", "+ f2 + ": " + f2.getQuantifier());
-                        return null;
+                    if (!numbering) {
+                        open++;
+                        next = l.get(0);                    //merged by the owner of the symbols
+                    } else if (budget.isNew(l.get(0))) {
+                        open++;
+                        if (budget.model()) {
+                            next = l.get(0);
+                        }
+                    }
+                } else if (breadthFirst) {
+                    for (int i = 0; i < succ.length; i++) {
+                        agenda.addLast(succ[i]);
                     }
-                    else if (f1.getCntv()=='&' && (equals(f1.getChild(0), f2) || equals(f1.getChild(1), f2)) && sign1==T && sign2==NPT) {
-                        //System.out.println("Theorem 8.3.8_2");
-                        return null;
-                    } else if (f1.getCntv()=='>' && equals(f1.getChild(1), f2)) {
-                        if ((sign1==NPT&&sign2==PT)||(sign1==NT&&sign2==T)||(sign1==NPT&&sign2==T)) {
-                            //System.out.println("Theorem 8.3.8_3");
-                            return null;
+                } else if (succ.length == 1) {
+                    agenda.push(succ[0]);
+                } else {
+                    for (int i = succ.length - 1; i >= 0; i--) {
+                        BranchKey key = budget.memo.key(succ[i]);
+                        if (budget.memo.isClosed(key)) {
+                            continue;
+                        }
+                        if (key != null) {
+                            marks.push(new Mark(key, agenda.size(), open));
                         }
+                        agenda.push(succ[i]);
                     }
                 }
             }
+            if (agenda.isEmpty()) {
+                finishSubtrees();
+            }
+            return next != null;
         }
 
-        //System.out.println("not closed..");
-        //include all generic justification formula
-        for (int i = 0; i < list.size(); i++) {
-            if (list.get(i).getQuantifier() == Formula.GENJUST) {
-                //atomList.add(list.get(i));
-                if (list.get(i).getType() != Formula.ATOMIC || (!list.get(i).getVar().equalsIgnoreCase("True") && !list.get(i).getVar().equalsIgnoreCase("False"))) {
-                    atomList.add(list.get(i));
+        /**
+         * Tests whether branches are left to expand.
+         * @return
+         */
+        boolean hasWork() {
+            return !agenda.isEmpty();
+        }
+
+        /**
+         * Records the finished subtrees without open branch as closed.
+         */
+        private void finishSubtrees() {
+            while (!marks.isEmpty() && agenda.size() <= marks.peek().position) {
+                Mark m = marks.pop();
+                if (m.open == open && budget.isComplete()) {
+                    budget.memo.addClosed(m.key);
                 }
             }
         }
-        ArrayList<Interpretation> result = new ArrayList<Interpretation>();
-        result.add(new Interpretation(atomList));
-        return result;
+
+        @Override
+        public Interpretation next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Interpretation i = next;
+            next = null;
+            return i;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
-     * Tests whether two given formulas are identical.
-     * @param f1
-     * @param f2
-     * @return
+     * A branch of a split being expanded by a <code>ModelIterator</code>.
      */
-    private boolean equals(Formula f1, Formula f2) {
-        if (f1.getRank() != f2.getRank()) return false;
-        else if (f1.getCntv() != f2.getCntv()) return false;
-        else if (f1.getType() == Formula.COMP_BINARY){
-            return (equals(f1.getChild(0), f2.getChild(0)) && equals(f1.getChild(1), f2.getChild(1)));
-        }else if (f1.getType() == Formula.COMP_UNARY){
-            return (equals(f1.getChild(0), f2.getChild(0)));
-        } else {
-            //System.out.println(f1.getVar() + " " + f2.getVar());
-            return (f1.getVar().equals(f2.getVar()));
+    private static class Mark {
+
+        private BranchKey key;
+        private int position;                               //index of the branch in the stack
+        private int open;                                   //open branches found before it
+
+        Mark(BranchKey key, int position, int open) {
+            this.key = key;
+            this.position = position;
+            this.open = open;
         }
     }
+
     /**
-     * Tests whether two justification prefixes match or not.
-     * @param j1
-     * @param j2
-     * @return true if <code>j1</code> matches with <code>j2</code>
+     * Fork/join task expanding one branch of a tableau.
      */
-    private boolean prefixMatches(ArrayList<Justification> j1, ArrayList<Justification> j2) {
-        if (j1 == null && j2 == null) return true;
-        if (j1 == null || j2 == null) return false;
-        if (j1.size() != j2.size()) return false;
+    private class ExpandTask extends RecursiveTask<Schemes> {
+
+        private static final long serialVersionUID = 1L;
+
+        private Branch branch;
+        private SymbolGenerator symbols;
+        private Budget budget;
+        private ExpandTask parent;                          //the task expanding the branch split, if any
+        private volatile boolean abandoned = false;
 
-        for (int i = 0; i < j1.size(); i++) {
-            if (!j1.get(i).equals(j2.get(i))) return false;
+        ExpandTask(Branch branch, SymbolGenerator symbols, Budget budget, ExpandTask parent) {
+            this.branch = branch;
+            this.symbols = symbols;
+            this.budget = budget;
+            this.parent = parent;
+        }
+
+        @Override
+        protected Schemes compute() {
+            return expand(branch, symbols, budget, this);
+        }
+
+        /**
+         * Stops the expansion of the subtree, whose schemes are not needed.
+         */
+        void abandon() {
+            abandoned = true;
+        }
+
+        boolean isAbandoned() {
+            for (ExpandTask t = this; t != null; t = t.parent) {
+                if (t.abandoned) {
+                    return true;
+                }
+            }
+            return false;
         }
-        return true;
     }
 
     /**
-     * Tests whether one justification prefix ends with another one.
-     * @param jp
-     * @param e
-     * @return true if <code>e</code> is a suffix of <code>jp</code>
+     * The interpretation schemes of a subtree, in the order of the tableau.
+     * With a limit on the number of models only the first distinct schemes
+     * are kept; otherwise equal schemes are merged by <code>solve</code>.
      */
-    private boolean prefixEndsWith(ArrayList<Justification> jp, ArrayList<Justification> e) {
-        if (e == null) return true;
-        if (jp == null || e.size() > jp.size()) return false;
+    private class Schemes {
+
+        private ArrayList<Interpretation> list = new ArrayList<Interpretation>();
+        private HashSet<Interpretation> distinct;           //the schemes kept, with a limit
+        private boolean more;                               //steps taken after the last scheme kept
+
+        Schemes(boolean more) {
+            this.more = more;
+            if (options.getMaxModels() > 0) {
+                distinct = new HashSet<Interpretation>();
+            }
+        }
+
+        /**
+         * Tests whether the limit on the number of models is reached.
+         * @return
+         */
+        boolean isFull() {
+            return options.getMaxModels() > 0 && list.size() >= options.getMaxModels();
+        }
 
-        for (int i = 0; i < e.size(); i++) {
-            if (!e.get(i).equals(jp.get(i))) return false;
+        /**
+         * Adds a scheme found after the others.
+         * @param i
+         * @return false if a scheme equal to it is already kept
+         */
+        boolean add(Interpretation i) {
+            if (distinct != null && !distinct.add(i)) {
+                return false;
+            }
+            list.add(i);
+            return true;
+        }
+
+        /**
+         * Adds the schemes of the subtree to the right of this one, as far as
+         * the limit allows.
+         * @param right
+         */
+        void addAll(Schemes right) {
+            int last = -1;                                  //index in right of the last scheme kept
+            for (int k = 0; k < right.list.size(); k++) {
+                Interpretation i = right.list.get(k);
+                if (isFull() && !distinct.contains(i)) {
+                    budget.truncate();
+                    more = true;
+                    return;
+                } else if (add(i)) {
+                    last = k;
+                }
+            }
+            //the right subtree took at least one step after the schemes of the left one
+            more = last < 0 || last < right.list.size() - 1 || right.more;
         }
-        return true;
     }
+
     /**
-     * Merges two lists of formulas so that the non-branching formulas appear before
-     * the branching ones.
-     * @param l1
+     * Limits of one search, shared by all its tasks, and the memo of the
+     * closed branches found by the search.
+     */
+    private static class Budget {
+
+        private final SolverOptions options;
+        private final long deadline;                        //System.nanoTime() value
+        private final AtomicLong nodes = new AtomicLong();
+        private final AtomicInteger models = new AtomicInteger();
+        private final Set<Interpretation> distinct = Collections.newSetFromMap(new ConcurrentHashMap<Interpretation, Boolean>());
+        private volatile boolean stopped = false;           //a limit was reached
+        private volatile boolean finished = false;          //the search needs no more steps
+        private volatile boolean truncated = false;
+        private final ClosureMemo memo;
+
+        Budget(SolverOptions options) {
+            this.options = options;
+            this.memo = new ClosureMemo(options.getMemoSize());
+            this.deadline = options.getTimeLimit() > 0 ? System.nanoTime() + options.getTimeLimit() * 1000000L : 0;
+        }
+
+        /**
+         * Accounts for an expansion step on a branch.
+         * @param branch
+         * @return false if the step must not be taken; the search is then truncated
+         */
+        boolean step(Branch branch) {
+            if (finished) {
+                return false;
+            }
+            if (!stopped) {
+                if ((options.getMaxModels() > 0 && models.get() >= options.getMaxModels())
+                        || (options.getMaxNodes() > 0 && nodes.incrementAndGet() > options.getMaxNodes())
+                        || (deadline != 0 && System.nanoTime() - deadline > 0)) {
+                    stopped = true;
+                }
+            }
+            if (stopped || (options.getMaxDepth() > 0 && branch.getDepth() > options.getMaxDepth())) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Records an interpretation scheme found by the iterative engine,
+         * unless one equal to it was found before.
+         * @param i
+         * @return false if the scheme was found before
+         */
+        boolean isNew(Interpretation i) {
+            return distinct.add(i);
+        }
+
+        /**
+         * Accounts for a new interpretation scheme.
+         * @return false if the scheme exceeds the maximum number of schemes
+         */
+        boolean model() {
+            if (options.getMaxModels() > 0 && models.incrementAndGet() > options.getMaxModels()) {
+                truncated = true;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Marks the search as stopped by a limit, e.g. once the subtrees left
+         * to expand are known to hold schemes beyond the limit on models.
+         */
+        void truncate() {
+            truncated = true;
+        }
+
+        /**
+         * Ends the search without truncating it, e.g. once the scheme looked
+         * for is found.
+         */
+        void finish() {
+            finished = true;
+        }
+
+        /**
+         * Tests whether no more steps will be allowed.
+         * @return
+         */
+        boolean isStopped() {
+            return stopped || finished;
+        }
+
+        boolean isTruncated() {
+            return truncated;
+        }
+
+        /**
+         * Tests whether every branch of the search has been expanded fully so
+         * far, so that a subtree without open branch is really closed.
+         * @return
+         */
+        boolean isComplete() {
+            return !truncated && !stopped && !finished;
+        }
+    }
+
+    /**
+     * Builds the interpretation of a fully expanded branch. Closure is detected
+     * by the <code>ClosureIndex</code> of the branch as formulas are added, so
+     * the branch is known to be open at this point.
+     * @param list a set of formulas representing a branch of tableau
+     * @return null if the branch is empty, otherwise an interpretation
+     * satisfying the branch.
+     */
+    private ArrayList<Interpretation> checkClosure(ArrayList<Formula> list) {
+
+        if (list == null || list.isEmpty()) {
+            return null;
+        }
+
+        ArrayList<Formula> atomList = new ArrayList<Formula>();
+        //pick all atomic formulas unless they are canonical justification formulas
+        for (int i = 0; i < list.size(); i++) {
+            if (ClosureIndex.isAtom(list.get(i))) {
+                atomList.add(list.get(i));
+            }
+        }
+        //include all generic justification formula
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i).getQuantifier() == Formula.GENJUST) {
+                if (list.get(i).getType() != Formula.ATOMIC || (list.get(i).getVarId() != SymbolTable.TRUE_ID && list.get(i).getVarId() != SymbolTable.FALSE_ID)) {
+                    atomList.add(list.get(i));
+                }
+            }
+        }
+        ArrayList<Interpretation> result = new ArrayList<Interpretation>();
+        result.add(new Interpretation(atomList));
+        return result;
+    }
+
+    /**
+     * Adds a list of formulas to a branch so that the non-branching formulas appear before
+     * the branching ones. The branching formulas are expanded in the order
+     * chosen by the heuristic of the options.
+     * @param branch
      * @param l2
-     * @return
+     * @return the extended branch
      */
-    private ArrayList<Formula> addAll(ArrayList<Formula> l1, ArrayList<Formula> l2) {
+    private Branch addAll(Branch branch, ArrayList<Formula> l2) {
         ArrayList<Formula> nonBranching = new ArrayList<Formula>();
+        ArrayList<Formula> branching = new ArrayList<Formula>();
         for (int i = 0; i < l2.size(); i++) {
             if (isBranching(l2.get(i))) {
-                l1.add(l2.get(i));
+                branching.add(l2.get(i));
             } else {
                 nonBranching.add(l2.get(i));
             }
         }
-        if (nonBranching.isEmpty()) {
-            return l1;
-        } else {
-            nonBranching.addAll(l1);
-            return nonBranching;
+        if (!nonBranching.isEmpty()) {
+            branch = branch.prependAll(nonBranching);
         }
+        return appendBranching(branch, branching);
     }
 
     /**
-     * Apply tableau expansion rule for a formula. For example,
+     * Appends branching formulas to a branch with their priority.
+     * @param branch
+     * @param l
+     * @return the extended branch
+     */
+    private Branch appendBranching(Branch branch, List<Formula> l) {
+        int heuristic = options.getHeuristic();
+        for (Formula f : l) {
+            branch = branch.append(f, Heuristics.priority(heuristic, f, branch));
+        }
+        return branch;
+    }
+
+    /**
+     * Apply tableau expansion rule for a formula, looked up in <code>RuleTable</code>.
+     * For example,
      * applyRule(T a -> b) returns [[NPT a], [T b]]
      * applyRule(NPT a -> b) returns [[T a, NPT b]]
      * @param f a formula
-     * @return a list of list of formulas
+     * @param symbols creates the justification symbols of the solve
+     * @return a list of list of formulas, <code>null</code> if no rule applies
      */
-    private ArrayList<ArrayList<Formula>> applyRule(Formula f) {
+    private ArrayList<ArrayList<Formula>> applyRule(Formula f, SymbolGenerator symbols) {
         ArrayList<ArrayList<Formula>> ll = new ArrayList<ArrayList<Formula>>();
-        f.setExpanded(true);
-        
-        //System.out.println("Applying rule for " + f);
-        
-        /* Shortcuts */
-        final int T = Formula.TRUE;
-        final int NT = Formula.NOT_TRUE;
-        final int PT = Formula.POT_TRUE;
-        final int NPT = Formula.NOT_POT_TRUE;
-        final int U = Formula.UNIV;
-        final int E = Formula.EXIST;
-        final int S = Formula.SOFT;
-        final int J = Formula.JUST;
-        final int KT = f.getKnowledgeType();
-        
-        ArrayList<Justification> JP = f.getJPrefix();
+        JustificationPrefix JP = f.getJPrefix();
         
         if (f.getQuantifier() != Formula.NONE) {
             ArrayList<Formula> l = new ArrayList<Formula>();
-            Formula g = new Formula(f.getSign(), KT, f, Formula.NONE, f.getJPrefix());
-            if (f.getQuantifier() == E) {
-                g.addJustification(new Justification(f.getRank(), false));
+            Formula g = new Formula(f.getSign(), f.getKnowledgeType(), f, Formula.NONE, JP);
+            if (f.getQuantifier() == Formula.EXIST) {
+                g.addJustification(symbols.newSymbol(f.getRank()));
             } else {
                 g.addJustification(new Justification(f.getRank(), true));
             }
             l.add(g);
             ll.add(l);
+            return ll;
 
         } else if (f.getType() == Formula.ATOMIC) {
             return null;
-        } else if (f.getCntv() == '-') {
-            ArrayList<Formula> l = new ArrayList<Formula>();
-            Formula g = f.getChild(0);
-            switch (f.getSign()) {
-                case T:
-                    l.add(new Formula(NPT, KT, g, JP));
-                    break;
-                case NT:
-                    l.add(new Formula(PT, KT, g, JP));
-                    break;
-                case PT:
-                    l.add(new Formula(NT, KT, g, JP));
-                    break;
-                case NPT:
-                    l.add(new Formula(T, KT, g, JP));
-                    break;
-            }
-            ll.add(l);
-        } else if (f.getCntv() == '~') {
-            ArrayList<Formula> l = new ArrayList<Formula>();
-            Formula g = f.getChild(0);
-            switch (f.getSign()) {
-                case T:
-                    l.add(new Formula(NT, KT, g, JP));
-                    break;
-                case NT:
-                    l.add(new Formula(T, KT, g, JP));
-                    break;
-                case PT:
-                    l.add(new Formula(NT, KT, g, JP));
-                    break;
-                case NPT:
-                    l.add(new Formula(T, KT, g, JP));
-                    break;
-            }
-            ll.add(l);
-        } else if (f.getCntv() == '#') {    //~'
-            ArrayList<Formula> l = new ArrayList<Formula>();
-            Formula g = f.getChild(0);
-            switch (f.getSign()) {
-                case T:
-                    l.add(new Formula(NPT, KT, g, JP));
-                    break;
-                case NT:
-                    l.add(new Formula(PT, KT, g, JP));
-                    break;
-                case PT:
-                    l.add(new Formula(NPT, KT, g, JP));
-                    break;
-                case NPT:
-                    l.add(new Formula(PT, KT, g, JP));
-                    break;
-            }
-            ll.add(l);
-        } else if (f.getCntv() == '@') {    //bot
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g = f.getChild(0);
-            switch (f.getSign()) {
-                case T:
-                    l1.add(new Formula(PT, KT, g, JP));
-                    l1.add(new Formula(NT, KT, g, JP));
-                    break;
-                case NT:
-                    l1.add(new Formula(T, KT, g, JP));
-                    l2.add(new Formula(NPT, KT, g, JP));
-                    break;
-                case PT:
-                case NPT:
-                    return null;
-            }
-            ll.add(l1);
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
-        } else if (f.getCntv() == '&') {
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g1 = f.getChild(0);
-            Formula g2 = f.getChild(1);
-            switch (f.getSign()) {
-                case T:
-                    l1.add(new Formula(T, KT, g1, JP));
-                    l1.add(new Formula(T, KT, g2, JP));
-                    break;
-                case NT:
-                    l1.add(new Formula(NT, KT, g1, JP));
-                    l2.add(new Formula(NT, KT, g2, JP));
-                    break;
-                case PT:
-                    l1.add(new Formula(PT, KT, g1, JP));
-                    l1.add(new Formula(PT, KT, g2, JP));
-                    break;
-                case NPT:
-                    l1.add(new Formula(NPT, KT, g1, JP));
-                    l2.add(new Formula(NPT, KT, g2, JP));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
-
-        } else if (f.getCntv() == '|') {
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g1 = f.getChild(0);
-            Formula g2 = f.getChild(1);
-            switch (f.getSign()) {
-                case T:
-                    l1.add(new Formula(T, KT, g1, JP));
-                    l2.add(new Formula(T, KT, g2, JP));
-                    break;
-                case NT:
-                    l1.add(new Formula(NT, KT, g1, JP));
-                    l1.add(new Formula(NT, KT, g2, JP));
-                    break;
-                case PT:
-                    l1.add(new Formula(PT, KT, g1, JP));
-                    l2.add(new Formula(PT, KT, g2, JP));
-                    break;
-                case NPT:
-                    l1.add(new Formula(NPT, KT, g1, JP));
-                    l1.add(new Formula(NPT, KT, g2, JP));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
-
-        } else if (f.getCntv() == '>') {
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g1 = f.getChild(0);
-            Formula g2 = f.getChild(1);
-            switch (f.getSign()) {
-                case T:
-                    l1.add(new Formula(NPT, KT, g1, JP));
-                    l2.add(new Formula(T, KT, g2, JP));
-                    break;
-                case NT:
-                    l1.add(new Formula(PT, KT, g1, JP));
-                    l1.add(new Formula(NT, KT, g2, JP));
-                    break;
-                case PT:
-                    l1.add(new Formula(NT, KT, g1, JP));
-                    l2.add(new Formula(PT, KT, g2, JP));
-                    break;
-                case NPT:
-                    l1.add(new Formula(T, KT, g1, JP));
-                    l1.add(new Formula(NPT, KT, g2, JP));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
-
-        } else if (f.getCntv() == '!') {
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g1 = f.getChild(0);
-            Formula g2 = f.getChild(1);
-            switch (f.getSign()) {
-                case T:
-                    l1.add(new Formula(T, KT, g1, JP));
-                    l1.add(new Formula(T, KT, g2, JP));
-                    break;
-                case NT:
-                    l1.add(new Formula(NT, KT, g1, JP));
-                    l2.add(new Formula(NT, KT, g2, JP));
-                    break;
-                case PT:
-                    l1.add(new Formula(PT, KT, g1, JP));
-                    l2.add(new Formula(PT, KT, g2, JP));
-                    break;
-                case NPT:
-                    l1.add(new Formula(NPT, KT, g1, JP));
-                    l1.add(new Formula(NPT, KT, g2, JP));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
-
-        } else if (f.getCntv() == '*') {
-            ArrayList<Formula> l1 = new ArrayList<Formula>();
-            ArrayList<Formula> l2 = new ArrayList<Formula>();
-            Formula g1 = f.getChild(0);
-            Formula g2 = f.getChild(1);
-            if (g2.getType() == Formula.ATOMIC && g2.getVar().equalsIgnoreCase("false")) {
-                //nogood formula *(a, False)
-                switch (f.getSign()) {
-                    case T:
-                        l1.add(new Formula(NPT, Formula.JUST, g1, JP));
-                        break;
-                    case NT:
-                        l1.add(new Formula(PT, Formula.JUST, g1, JP));
-                        break;
-                    case PT:
-                        l1.add(new Formula(NT, Formula.JUST, g1, JP));
-                        break;
-                    case NPT:
-                        l1.add(new Formula(T, Formula.JUST, g1, JP));
-                        break;
-                }
-                if (!l1.isEmpty()) {
-                    for (Formula h : l1) {
-                        h.setQuantifier(Formula.GENJUST);
-                        h.setExpanded(true);
-                    }
-                    ll.add(l1);
-                }
-            } else {
-                switch (f.getSign()) {
-                    case T:
-                        l1.add(new Formula(T, Formula.JUST, g1, JP));
-                        l1.add(new Formula(T, S, g2, JP));
-                        l2.add(new Formula(NPT, Formula.JUST, g1, JP));
-                        break;
-                    case NT:
-                        l1.add(new Formula(PT, Formula.JUST, g1, JP));
-                        l2.add(new Formula(PT, Formula.JUST, g1, JP));
-                        l1.add(new Formula(NT, Formula.JUST, g1, JP));
-                        l1.add(new Formula(T, S, g2, JP));
-                        l2.add(new Formula(NT, S, g2, JP));
-                        break;
-                    case PT:
-                        l1.add(new Formula(NT, Formula.JUST, g1, JP));
-                        l1.add(new Formula(NPT, S, g2, JP));
-                        l2.add(new Formula(PT, S, g2, JP));
-                        break;
-                    case NPT:
-                        l1.add(new Formula(T, Formula.JUST, g1, JP));
-                        l1.add(new Formula(NPT, S, g2, JP));
-                        break;
-                }
-                if (!l1.isEmpty()) {
-                    for (Formula h : l1) {
-                        if (h.getKnowledgeType() == Formula.JUST) {
-                            //System.out.println("preprocessed : " + h);
-                            h.setQuantifier(Formula.GENJUST);
-                            h.setExpanded(true);
-                        }
-                    }
-                    ll.add(l1);
-                }
-                if (!l2.isEmpty()) {
-                    for (Formula h : l2) {
-                        if (h.getKnowledgeType() == Formula.JUST) {
-                            h.setQuantifier(Formula.GENJUST);
-                            h.setExpanded(true);
-                        }
-                    }
-                    ll.add(l2);
-                }
-            }
-
-        } else if (f.getCntv() == '0') {    // Diamondsuit <>
-            int args[] = {
-                NPT, U,         PT, E,      NPT, E,     PT, U,  //nogood
-                PT, U,  T,      NPT, U,                         //True
-                PT, E,  NPT, E, T, NT,                          //Not True
-                NPT, E, NPT, PT,                                //Potentially True
-                PT, U, NPT                                      //Not Potentially True
-            };
-            return applyCondIonRules1(f, args);
-
-        } else if (f.getCntv() == '1') {    // HeartSuit (^)
-            int args[] = {
-                NT, U,      T, E,       NT, E,       T, E,  //nogood
-                T, U,       T,          NT, U,              //True
-                T, E,       NT, E,      T,    NT,           //Not True
-                NT, E,      NPT,        PT,                 //Potentially True
-                T, U,       NPT                             //Not Potentially True
-            };
-            return applyCondIonRules1(f, args);
-
-        } else if (f.getCntv() == '2') {    // Circle O
-            int args[] = {
-                T , U,      T, E,       NT, E,       T, E,  //nogood
-                T, U,       T,          NPT, U,              //True
-                PT, E,      NT, E,      T,    NT,           //Not True
-                NT, E,      NPT,        PT,                 //Potentially True
-                T, U,       NPT                             //Not Potentially True
-            };
-            return applyCondIonRules1(f, args);
-
-        } else if (f.getCntv() == '5') {    // Blackfly (Bullet) o
-            int args[] = {
-                NPT , U,    PT, E,      NT, U,       T, E,  //nogood
-                T, E,       T,          NPT, U,              //True
-                PT, E,      NT, U,      T,    NT,           //Not True
-                NT, U,      NPT,        PT,                 //Potentially True
-                T, E,       NPT                             //Not Potentially True
-            };
-            return applyCondIonRules1(f, args);
-
-        } else if (f.getCntv() == '8') {    // Butterfly (Bullet-twin) |><|
-            int args[] = {
-                NPT , E,    PT, U,      NT, E,       T, U,  //nogood
-                T, U,       T,          NPT, E,              //True
-                PT, U,      NT, E,      T,    NT,           //Not True
-                NT, E,      NPT,        PT,                 //Potentially True
-                T, U,       NPT                             //Not Potentially True
-            };
-            return applyCondIonRules1(f, args);
-            
-        } else if (f.getCntv() == '3') {    //Spadesuit
-            int args[] = {
-                NPT , U,    PT, E,      NPT, U,       PT, E,  //nogood
-                NPT, E,     T,          NPT, U,               //True
-                PT, E,      NT,                               //Not True
-                NPT, U,     NPT,        PT,                   //Potentially True
-                PT, E,      NPT                               //Not Potentially True
-            };
-            return applyCondIonRules2(f, args);
-        } else if (f.getCntv() == '4') {    //Clubsuit
-            int args[] = {
-                NT , U,    T, E,       NT, U,       T, E,    //nogood
-                T, E,      T,          NT, U,                //True
-                T, E,      NT,                               //Not True
-                NT, U,     NPT,        PT,                   //Potentially True
-                T, E,      NPT                               //Not Potentially True
-            };
-            return applyCondIonRules2(f, args);
-
-        } else if (f.getCntv() == '6') {    //Spadesuit-twin
-            int args[] = {
-                NPT , E,    PT, U,       NPT, E,       PT, U,  //nogood
-                PT, U,      T,           NPT, E,               //True
-                PT, U,      NT,                                //Not True
-                NPT, E,     NPT,         PT,                   //Potentially True
-                PT, U,      NPT                                //Not Potentially True
-            };
-            return applyCondIonRules2(f, args);
-            
-        } else if (f.getCntv() == '7') {    //Clubsuit-twin
-            int args[] = {
-                NT , E,    T, U,       NT, E,       T, U,  //nogood
-                T, U,      T,           NT, E,               //True
-                T, U,      NT,                                //Not True
-                NT, E,     NPT,         PT,                   //Potentially True
-                T, U,      NPT                                //Not Potentially True
-            };
-            return applyCondIonRules2(f, args);
-        }
-
-        //System.out.println("Returning " + ll);
-        return ll;
-    }
-
-    /**
-     * Applies rules for conditional ion 0,1,2,5,8. Their structure differ from
-     * from the rest in the rule for NT formulas. Parameters are used as follows:
-     * <pre>     
-     * T *0(f, false)   NT*0(f, false)    PT*0(f, false)   NPT*0(f, false)
-     * |                |                 |                |
-     * a0 f a1          a2 f a3           a4 f a5          a6 f a7
-     * <br>
-     *                   T *0(f1, f2)
-     *     -------------------------------------------
-     *    a8  f1 a9                         a11 f1 a12
-     *    a10 f2
-     *                  NT *0(f1, f2)
-     *                  |
-     *                  a13 f1 a14
-     *    ---------------------------------------------
-     *   a15 f1 a16                              a18 f2
-     *   a17 f2
-     *                  PT *0(f1, f2)
-     *   ----------------------------------------------
-     *   a19 f1 a20                              a22 f2
-     *   a21 f2
-     *                  NPT *0(f1, f2)
-     *                  |
-     *                  a23 f1 24
-     *                  a25 f2
-     * </pre>
-     * @param f
-     * @param args an array of length 26, containing all the parameters.
-     * @return
-     */
-    private ArrayList<ArrayList<Formula>> applyCondIonRules1(Formula f, int args[]) {
-        ArrayList<ArrayList<Formula>> ll = new ArrayList<ArrayList<Formula>>();
-        ArrayList<Formula> l1 = new ArrayList<Formula>();
-        ArrayList<Formula> l2 = new ArrayList<Formula>();
-        Formula g1 = f.getChild(0);
-        Formula g2 = f.getChild(1);
-        if (g2.getType() == Formula.ATOMIC && g2.getVar().equalsIgnoreCase("false")) {
-            //nogood formula *(a, False)
-            switch (f.getSign()) {
-                case Formula.TRUE:
-                    l1.add(new Formula(args[0], Formula.JUST, g1, args[1], f.getJPrefix()));
-                    break;
-                case Formula.NOT_TRUE:
-                    l1.add(new Formula(args[2], Formula.JUST, g1, args[3], f.getJPrefix()));
-                    break;
-                case Formula.POT_TRUE:
-                    l1.add(new Formula(args[4], Formula.JUST, g1, args[5], f.getJPrefix()));
-                    break;
-                case Formula.NOT_POT_TRUE:
-                    l1.add(new Formula(args[6], Formula.JUST, g1, args[7], f.getJPrefix()));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-        } else {
-            switch (f.getSign()) {
-                case Formula.TRUE:
-                    l1.add(new Formula(args[8], Formula.JUST, g1, args[9], f.getJPrefix()));
-                    l1.add(new Formula(args[10], Formula.SOFT, g2, f.getJPrefix()));
-                    l2.add(new Formula(args[11], Formula.JUST, g1, args[12], f.getJPrefix()));
-                    break;
-                case Formula.NOT_TRUE:
-                    l1.add(new Formula(args[13], Formula.JUST, g1, args[14], f.getJPrefix()));
-                    l2.add(new Formula(args[13], Formula.JUST, g1, args[14], f.getJPrefix()));
-                    l1.add(new Formula(args[15], Formula.JUST, g1, args[16], f.getJPrefix()));
-                    l1.add(new Formula(args[17], Formula.SOFT, g2, f.getJPrefix()));
-                    l2.add(new Formula(args[18], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-                case Formula.POT_TRUE:
-                    l1.add(new Formula(args[19], Formula.JUST, g1, args[20], f.getJPrefix()));
-                    l1.add(new Formula(args[21], Formula.SOFT, g2, f.getJPrefix()));
-                    l2.add(new Formula(args[22], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-                case Formula.NOT_POT_TRUE:
-                    l1.add(new Formula(args[23], Formula.JUST, g1, args[24], f.getJPrefix()));
-                    l1.add(new Formula(args[25], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
-            }
         }
-        return ll;
-    }
 
-    /**
-     * Applies rules for conditional ion 3,4,6,7. Parameters are used as follows:
-     * <pre>
-     * T *0(f, false)   NT*0(f, false)    PT*0(f, false)   NPT*0(f, false)
-     * |                |                 |                |
-     * a0 f a1          a2 f a3           a4 f a5          a6 f a7
-     * <br>
-     *                   T *0(f1, f2)
-     *     -------------------------------------------
-     *    a8  f1 a9                         a11 f1 a12
-     *    a10 f2
-     *                  NT *0(f1, f2)
-     *                  |
-     *                  a13 f1 a14
-     *                  a15 f2
-     * <br>
-     *                  PT *0(f1, f2)
-     *   ----------------------------------------------
-     *   a16 f1 a17                              a19 f2
-     *   a18 f2
-     *                  NPT *0(f1, f2)
-     *                  |
-     *                  a20 f1 21
-     *                  a22 f2
-     * </pre>
-     * @param f
-     * @param args an array of length 23, containing all the parameters.
-     * @return
-     */
-    private ArrayList<ArrayList<Formula>> applyCondIonRules2(Formula f, int args[]) {
-        ArrayList<ArrayList<Formula>> ll = new ArrayList<ArrayList<Formula>>();
-        ArrayList<Formula> l1 = new ArrayList<Formula>();
-        ArrayList<Formula> l2 = new ArrayList<Formula>();
-        Formula g1 = f.getChild(0);
-        Formula g2 = f.getChild(1);
-        if (g2.getType() == Formula.ATOMIC && g2.getVar().equalsIgnoreCase("false")) {
-            //nogood formula *(a, False)
-            switch (f.getSign()) {
-                case Formula.TRUE:
-                    l1.add(new Formula(args[0], Formula.JUST, g1, args[1], f.getJPrefix()));
-                    break;
-                case Formula.NOT_TRUE:
-                    l1.add(new Formula(args[2], Formula.JUST, g1, args[3], f.getJPrefix()));
-                    break;
-                case Formula.POT_TRUE:
-                    l1.add(new Formula(args[4], Formula.JUST, g1, args[5], f.getJPrefix()));
-                    break;
-                case Formula.NOT_POT_TRUE:
-                    l1.add(new Formula(args[6], Formula.JUST, g1, args[7], f.getJPrefix()));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-        } else {
-            switch (f.getSign()) {
-                case Formula.TRUE:
-                    l1.add(new Formula(args[8], Formula.JUST, g1, args[9], f.getJPrefix()));
-                    l1.add(new Formula(args[10], Formula.SOFT, g2, f.getJPrefix()));
-                    l2.add(new Formula(args[11], Formula.JUST, g1, args[12], f.getJPrefix()));
-                    break;
-                case Formula.NOT_TRUE:
-                    l1.add(new Formula(args[13], Formula.JUST, g1, args[14], f.getJPrefix()));
-                    l1.add(new Formula(args[15], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-                case Formula.POT_TRUE:
-                    l1.add(new Formula(args[16], Formula.JUST, g1, args[17], f.getJPrefix()));
-                    l1.add(new Formula(args[18], Formula.SOFT, g2, f.getJPrefix()));
-                    l2.add(new Formula(args[19], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-                case Formula.NOT_POT_TRUE:
-                    l1.add(new Formula(args[20], Formula.JUST, g1, args[21], f.getJPrefix()));
-                    l1.add(new Formula(args[22], Formula.SOFT, g2, f.getJPrefix()));
-                    break;
-            }
-            if (!l1.isEmpty()) {
-                ll.add(l1);
-            }
-            if (!l2.isEmpty()) {
-                ll.add(l2);
+        RuleTable.Child rule[][] = RuleTable.lookup(f);
+        if (rule == null) {                                         //e.g. applyRule(PT bot(a))
+            return null;
+        }
+        for (RuleTable.Child branch[] : rule) {
+            ArrayList<Formula> l = new ArrayList<Formula>(branch.length);
+            for (RuleTable.Child c : branch) {
+                l.add(c.instantiate(f));
             }
+            ll.add(l);
         }
         return ll;
     }
-    
+
     /**
      * Tests whether a formula would cause branching or not.
      * @param f
      * @return true is <code>f</code> is branching.
      */
     private boolean isBranching(Formula f) {
-        if (f.getCntv() == '|') {
-            if (f.getSign() == Formula.TRUE || f.getCntv() == Formula.POT_TRUE) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if (f.getCntv() == '&') {
-            if (f.getSign() == Formula.NOT_TRUE || f.getCntv() == Formula.NOT_POT_TRUE) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if (f.getCntv() == '@') {
-            if (f.getSign() == Formula.NOT_TRUE) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if (f.getCntv() == '>') {
-            if (f.getSign() == Formula.TRUE || f.getCntv() == Formula.POT_TRUE) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if (f.getCntv() == '!') {
-            if (f.getSign() == Formula.NOT_TRUE || f.getCntv() == Formula.POT_TRUE) {
-                return true;
-            } else {
-                return false;
-            }
-        } else if (Character.isDigit(f.getCntv())) {
-            if (f.getSign() == Formula.NOT_POT_TRUE) {
-                return false;
-            } else if ((f.getSign() == Formula.NOT_TRUE) && (f.getCntv() == '3' || f.getCntv() == '4' || f.getCntv() == '6' || f.getCntv() == '7')) {
-                return false;
-            } else {
-                return true;
-            }
-        } else {
+        if (f.getQuantifier() != Formula.NONE || f.getType() == Formula.ATOMIC) {
             return false;
         }
+        RuleTable.Child rule[][] = RuleTable.lookup(f);
+        return rule != null && rule.length > 1;
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * <code>SolverOptions</code> holds the search order, the branching heuristic
+ * and the limits of a <code>Solver</code>. When a limit is reached the solver
+ * stops and returns the interpretation schemes found so far;
+ * <code>Solver.isTruncated</code> then tells whether some part of the tableau
+ * was left unexplored. A limit of <code>UNLIMITED</code> is not checked.
+ * @author Syeed Ibn Faiz
+ */
+public class SolverOptions {
+
+    public static final int UNLIMITED = 0;
+
+    /* Search orders */
+    public static final int DEPTH_FIRST = 0;
+    public static final int BREADTH_FIRST = 1;
+
+    /* Branching heuristics */
+    public static final int IN_ORDER = 0;
+    public static final int LOW_RANK_FIRST = 1;
+    public static final int FEWEST_BRANCHES = 2;
+    public static final int FAIL_FIRST = 3;
+
+    private int searchOrder = DEPTH_FIRST;
+    private int heuristic = IN_ORDER;
+    private int maxModels = UNLIMITED;      //number of interpretation schemes
+    private long timeLimit = UNLIMITED;     //milliseconds
+    private int maxDepth = UNLIMITED;       //rules applied on a branch
+    private long maxNodes = UNLIMITED;      //expansion steps
+    private int memoSize = 0;               //closed branches remembered, off unless set
+
+    public int getSearchOrder() {
+        return searchOrder;
+    }
+
+    /**
+     * Sets the order in which the branches of the tableau are expanded, one of
+     * <code>DEPTH_FIRST</code> and <code>BREADTH_FIRST</code>. Depth-first order
+     * produces the interpretation schemes in the order of the tableau. In
+     * parallel mode only the branches too small to be forked follow this order.
+     * @param searchOrder
+     */
+    public void setSearchOrder(int searchOrder) {
+        this.searchOrder = searchOrder;
+    }
+
+    public int getHeuristic() {
+        return heuristic;
+    }
+
+    /**
+     * Sets the heuristic choosing which branching formula of a branch is
+     * expanded next, one of <code>IN_ORDER</code>, <code>LOW_RANK_FIRST</code>,
+     * <code>FEWEST_BRANCHES</code> and <code>FAIL_FIRST</code>. Non-branching
+     * formulas are always expanded first. The interpretation schemes are the
+     * same with every heuristic, up to the labels of their concrete symbols,
+     * but their order may differ.
+     * @param heuristic
+     */
+    public void setHeuristic(int heuristic) {
+        this.heuristic = heuristic;
+    }
+
+    public int getMaxModels() {
+        return maxModels;
+    }
+
+    /**
+     * Sets the maximum number of interpretation schemes to produce.
+     * @param maxModels
+     */
+    public void setMaxModels(int maxModels) {
+        this.maxModels = maxModels;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Sets the wall-clock time a search may take, in milliseconds. The deadline
+     * is counted from the start of <code>solve</code> (or from the creation of
+     * the iterator).
+     * @param timeLimit
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum depth of the tableau, i.e. the maximum number of rules
+     * applied from the root to a branch, each extending or splitting it. The
+     * formulas of the problem do not count. Deeper branches are abandoned.
+     * @param maxDepth
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+
+    /**
+     * Sets the maximum number of expansion steps of a search. A step applies
+     * the expansion rules to a branch until it is split or extended.
+     * @param maxNodes
+     */
+    public void setMaxNodes(long maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    public int getMemoSize() {
+        return memoSize;
+    }
+
+    /**
+     * Sets the number of closed branches a search remembers, so that a branch
+     * with the same formulas reached in another way is not expanded again.
+     * Only depth-first and parallel searches use it. It is off (0) by default:
+     * the key of a branch is built from all its formulas at every split, which
+     * only pays off when many branches are closed by the same formulas.
+     * @param memoSize
+     */
+    public void setMemoSize(int memoSize) {
+        this.memoSize = memoSize;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <code>SymbolGenerator</code> creates the concrete justification symbols of
+ * one solve. Symbols are created without a label and collected in creation
+ * order; <code>number</code> then labels them 1, 2, ... so the labels of a
+ * solve do not depend on other solves running before or at the same time.
+ * A parallel expansion gives every task a <code>fork</code> of the generator
+ * and joins the forks back in the order a sequential expansion would have
+ * created their symbols, so its labels are the same too. Every symbol also
+ * gets an id, shared by the forks, as soon as it is created.
+ * @author Syeed Ibn Faiz
+ */
+class SymbolGenerator {
+
+    private int count = 0;                  //labels given so far
+    private final AtomicInteger ids;        //ids given so far, by this generator and its forks
+    private ArrayList<Justification> pending = new ArrayList<Justification>();
+
+    public SymbolGenerator() {
+        this(new AtomicInteger());
+    }
+
+    private SymbolGenerator(AtomicInteger ids) {
+        this.ids = ids;
+    }
+
+    /**
+     * Creates a concrete symbol, labelled by the next call to <code>number</code>.
+     * @param rank rank of the symbol
+     * @return
+     */
+    public Justification newSymbol(int rank) {
+        Justification j = new Justification(rank, false);
+        j.setId(ids.incrementAndGet());
+        pending.add(j);
+        return j;
+    }
+
+    /**
+     * Returns an empty generator collecting the symbols of a subtree.
+     * @return
+     */
+    public SymbolGenerator fork() {
+        return new SymbolGenerator(ids);
+    }
+
+    /**
+     * Appends the symbols collected by a fork, which must not be used any more.
+     * @param fork
+     */
+    public void join(SymbolGenerator fork) {
+        pending.addAll(fork.pending);
+    }
+
+    /**
+     * Labels the symbols created since the last call, in creation order.
+     */
+    public void number() {
+        for (Justification j : pending) {
+            j.setLbl(++count);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * <code>SymbolTable</code> maps the names of propositional variables to dense
+ * integer ids. Names are case-insensitive, as everywhere in PIIL, so
+ * <code>a</code> and <code>A</code> get the same id. The constants
+ * <code>True</code> and <code>False</code> have reserved ids. Atoms built by a
+ * <code>FormulaFactory</code> carry the id of their variable, so variables can
+ * be compared without string comparison or case folding.
+ * @author Syeed Ibn Faiz
+ */
+public class SymbolTable {
+
+    /* Reserved ids */
+    public static final int UNKNOWN_ID = -1;
+    public static final int TRUE_ID = 0;
+    public static final int FALSE_ID = 1;
+
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>();     //case-folded name -> id
+    private ArrayList<String> names = new ArrayList<String>();               //id -> first name seen
+
+    /**
+     * Constructs a symbol table containing only <code>True</code> and <code>False</code>.
+     */
+    public SymbolTable() {
+        getId("True");
+        getId("False");
+    }
+
+    /**
+     * Returns the id of a propositional variable, giving it a new one if needed.
+     * @param name name of a propositional variable
+     * @return
+     */
+    public synchronized int getId(String name) {
+        String key = FormulaFactory.fold(name);
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = names.size();
+            ids.put(key, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the name a variable was first seen with.
+     * @param id
+     * @return
+     */
+    public synchronized String getName(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Returns the number of ids given so far, including the reserved ones.
+     * @return
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns the reserved id of a name, if it has one.
+     * @param name
+     * @return <code>TRUE_ID</code>, <code>FALSE_ID</code> or <code>UNKNOWN_ID</code>
+     */
+    static int reservedId(String name) {
+        if (name.equalsIgnoreCase("True")) return TRUE_ID;
+        if (name.equalsIgnoreCase("False")) return FALSE_ID;
+        return UNKNOWN_ID;
+    }
+}
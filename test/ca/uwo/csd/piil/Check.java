@@ -0,0 +1,102 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * <code>Check</code> holds the assertions shared by the tests. A test is a
+ * class of this package with a <code>main</code> running its checks; it stops
+ * with an <code>AssertionError</code> at the first check that fails. From the
+ * top directory:
+ * <pre>
+ * javac -encoding UTF-8 -d build src/ca/uwo/csd/piil/*.java test/ca/uwo/csd/piil/*.java
+ * java -cp build ca.uwo.csd.piil.SolverTest
+ * </pre>
+ * @author Syeed Ibn Faiz
+ */
+class Check {
+
+    private Check() {
+    }
+
+    static void isTrue(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+
+    static void equal(Object expected, Object actual, String what) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            throw new AssertionError(what + ": expected <" + expected + "> but was <" + actual + ">");
+        }
+    }
+
+    /**
+     * Parses a sequence of sentences with a new <code>Parser</code>.
+     * @param str
+     * @return
+     */
+    static ArrayList<Formula> parse(String str) {
+        try {
+            return new Parser().parse(str);
+        } catch (Exception ex) {
+            throw new AssertionError("cannot parse " + str + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns a random problem of 1 to <code>sentences</code> sentences over
+     * the variables a to d, with every turnstile and connective, ions of
+     * every rank among them.
+     * @param random
+     * @param sentences
+     * @param depth nesting of connectives
+     * @return
+     */
+    static String randomProblem(Random random, int sentences, int depth) {
+        String turnstiles[] = {"T", "NT", "PT", "NPT"};
+        StringBuilder sb = new StringBuilder();
+        for (int n = 1 + random.nextInt(sentences); n > 0; n--) {
+            sb.append(turnstiles[random.nextInt(turnstiles.length)]).append(' ');
+            randomFormula(random, depth, sb);
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void randomFormula(Random random, int depth, StringBuilder sb) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            sb.append((char) ('a' + random.nextInt(4)));
+            return;
+        }
+        int c = random.nextInt(8);
+        if (c < 3) {
+            sb.append(c == 0 ? "-(" : c == 1 ? "~(" : "~'(");
+            randomFormula(random, depth - 1, sb);
+        } else if (c == 3) {
+            sb.append('*').append(random.nextInt(6)).append('(');
+            randomFormula(random, depth - 1, sb);
+            sb.append(", ");
+            randomFormula(random, depth - 1, sb);
+        } else {
+            sb.append('(');
+            randomFormula(random, depth - 1, sb);
+            sb.append(c == 4 ? " & " : c == 5 ? " | " : c == 6 ? " -> " : " ! ");
+            randomFormula(random, depth - 1, sb);
+        }
+        sb.append(')');
+    }
+
+    /**
+     * Reports a test passed.
+     * @param test
+     */
+    static void passed(Class<?> test) {
+        System.out.println(test.getSimpleName() + " passed.");
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Tests the branching heuristics: the priorities they give, and that every
+ * heuristic gives the same interpretation schemes, sequentially and in
+ * parallel.
+ * @author Syeed Ibn Faiz
+ */
+public class HeuristicsTest {
+
+    private static final int HEURISTICS[] = {SolverOptions.IN_ORDER, SolverOptions.LOW_RANK_FIRST,
+        SolverOptions.FEWEST_BRANCHES, SolverOptions.FAIL_FIRST};
+
+    public static void main(String args[]) {
+        testPriorities();
+        //new symbols created under a split expanded before the ion
+        testSameSchemes("NPT -(~'(a & a))\nNT *5(d, d)", 2);
+        testSameSchemes("NT (a | *5((d -> b), d))\nPT b\nPT ~(((b | d) -> (a ! a)))", 8);
+        Random random = new Random(21);
+        for (int i = 0; i < 300; i++) {
+            testSameSchemes(Check.randomProblem(random, 4, 4), -1);
+        }
+        Check.passed(HeuristicsTest.class);
+    }
+
+    static void testPriorities() {
+        ArrayList<Formula> l = Check.parse("T ((a | b) | (c | d))\nT (a & b)\nT (a | b)\nNT a\nT *3(a, b)");
+        Branch branch = new Branch(new ArrayList<Formula>(l.subList(3, 4)));
+        Check.equal(4, Heuristics.priority(SolverOptions.FEWEST_BRANCHES, l.get(0), branch), "branches of " + l.get(0));
+        Check.equal(1, Heuristics.priority(SolverOptions.FEWEST_BRANCHES, l.get(1), branch), "branches of " + l.get(1));
+        Check.equal(2, Heuristics.priority(SolverOptions.FAIL_FIRST, l.get(0), branch), "open branches of " + l.get(0));
+        //T a is closed at once by NT a
+        Check.equal(1, Heuristics.priority(SolverOptions.FAIL_FIRST, l.get(2), branch), "open branches of " + l.get(2) + " with NT a");
+        Check.equal(l.get(4).getRank(), Heuristics.priority(SolverOptions.LOW_RANK_FIRST, l.get(4), branch), "priority of " + l.get(4));
+        for (Formula f : l) {
+            Check.equal(0, Heuristics.priority(SolverOptions.IN_ORDER, f, branch), "priority of " + f + " in order");
+        }
+
+        //lowest priority first, then in order
+        branch = branch.append(l.get(0), 4).append(l.get(2), 2).append(l.get(4), 2);
+        Check.isTrue(branch.firstUnexpanded() == l.get(3), "formulas of the front first");
+        branch = branch.expandFirst();
+        Check.isTrue(branch.firstUnexpanded() == l.get(2), "lowest priority first");
+        Check.isTrue(branch.expandFirst().firstUnexpanded() == l.get(4), "equal priorities in order");
+    }
+
+    /**
+     * Solves a problem with every heuristic and checks they give the same
+     * distinct schemes.
+     * @param str
+     * @param count the number of schemes expected, -1 if not known
+     */
+    static void testSameSchemes(String str, int count) {
+        HashSet<Interpretation> expected = null;
+        for (int p = 0; p < 2; p++) {
+            for (int h : HEURISTICS) {
+                SolverOptions options = new SolverOptions();
+                options.setHeuristic(h);
+                Solver solver = new Solver();
+                solver.setOptions(options);
+                solver.setParallel(p == 1);
+                solver.setParallelThreshold(1);
+                ArrayList<Interpretation> models = solver.solve(Check.parse(str));
+                HashSet<Interpretation> schemes = new HashSet<Interpretation>();
+                if (models != null) {
+                    schemes.addAll(models);
+                    Check.equal(models.size(), schemes.size(), "distinct schemes of " + str + " with heuristic " + h);
+                }
+                if (expected == null) {
+                    expected = schemes;
+                    if (count >= 0) {
+                        Check.equal(count, schemes.size(), "schemes of " + str);
+                    }
+                } else {
+                    Check.equal(expected, schemes, "schemes of " + str + " with heuristic " + h + (p == 1 ? " in parallel" : ""));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Tests the batch mode: listing the problems of a directory or a manifest,
+ * naming their output files, and solving them without overwriting a result.
+ * The problems are written to a temporary directory.
+ * @author Syeed Ibn Faiz
+ */
+public class MainTest {
+
+    public static void main(String args[]) throws Exception {
+        File dir = Files.createTempDirectory("piil").toFile();
+        try {
+            testBatch(dir);
+        } finally {
+            delete(dir);
+        }
+        Check.passed(MainTest.class);
+    }
+
+    static void testBatch(File dir) throws Exception {
+        File a = write(new File(dir, "a/x.in"), "T (p | q)");
+        File b = write(new File(dir, "b/x.in"), "T r");
+        File y = write(new File(dir, "y.in"), "T p\nNT p");
+        write(new File(dir, "b/notes.txt"), "not a problem");
+        File manifest = write(new File(dir, "list"), "a/x.in\n\n  b/x.in\n" + y.getAbsolutePath() + "\n");
+
+        Check.equal(Arrays.asList(a, b, y), listProblems(manifest), "problems of the manifest");
+        Check.equal(Arrays.asList(new File(dir, "b/x.in")), listProblems(new File(dir, "b")), "problems of a directory");
+        Check.equal("x.out", Main.outputName(a), "output name of x.in");
+        Check.equal("notes.txt.out", Main.outputName(new File("notes.txt")), "output name of notes.txt");
+
+        File out = new File(dir, "out");
+        ArrayList<File> outputs = Main.outputFiles(new ArrayList<File>(Arrays.asList(a, b, y)), out);
+        Check.equal(Arrays.asList(new File(out, "x.out"), null, new File(out, "y.out")), outputs, "output files in one directory");
+        outputs = Main.outputFiles(new ArrayList<File>(Arrays.asList(a, b, y)), null);
+        Check.equal(Arrays.asList(new File(dir, "a/x.out"), new File(dir, "b/x.out"), new File(dir, "y.out")),
+                absolute(outputs), "output files next to the problems");
+
+        Main.solveBatch(manifest, out, 2, false, new SolverOptions(), ResultWriter.UTF8);
+        File expected = new File(dir, "expected.out");
+        Main.solveFile(a, expected, false, new SolverOptions(), ResultWriter.UTF8);
+        Check.equal(read(expected), read(new File(out, "x.out")), "result of a/x.in, not overwritten by b/x.in");
+        Main.solveFile(y, expected, false, new SolverOptions(), ResultWriter.UTF8);
+        Check.equal(read(expected), read(new File(out, "y.out")), "result of y.in");
+        Check.equal(2, out.list().length, "output files written");
+
+        Main.solveBatch(new File(dir, "b"), null, 1, true, new SolverOptions(), ResultWriter.UTF8);
+        Check.isTrue(new File(dir, "b/x.out").isFile(), "result of b/x.in next to it");
+    }
+
+    private static ArrayList<File> listProblems(File source) throws IOException {
+        return absolute(Main.listProblems(source));
+    }
+
+    private static ArrayList<File> absolute(ArrayList<File> files) {
+        ArrayList<File> result = new ArrayList<File>();
+        for (File f : files) {
+            result.add(f.getAbsoluteFile());
+        }
+        return result;
+    }
+
+    private static File write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(ResultWriter.UTF8));
+        return file.getAbsoluteFile();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), ResultWriter.UTF8);
+    }
+
+    private static void delete(File file) {
+        File files[] = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests the dominance scan of <code>MinimalModels</code> against the
+ * definition, comparing every pair of models, sequentially and in parallel.
+ * @author Syeed Ibn Faiz
+ */
+public class MinimalModelsTest {
+
+    public static void main(String args[]) {
+        testSmall();
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            testRandom(random, 1 + random.nextInt(40), 1 + random.nextInt(100));
+        }
+        //enough models for the parallel scan, over more than one chunk
+        testRandom(random, MinimalModels.PARALLEL_THRESHOLD, 12);
+        testRandom(random, 2500, 20);
+        testRandom(random, 3000, 150);
+        Check.passed(MinimalModelsTest.class);
+    }
+
+    static void testSmall() {
+        //{1} and {1, 2} with more formulas smaller, {3} with fewer formulas smaller
+        int[][] more = {{1}, {1, 2}, {1, 2}, {}, {2, 1, 1}};
+        int[][] fewer = {{3}, {3}, {}, {}, {3}};
+        MinimalModels m = new MinimalModels(more.length);
+        m.add(more, true);
+        m.add(fewer, false);
+        //model 2 precedes 0, 1, 3 and 4; models equal to a minimal one are minimal too
+        Check.equal("[false, false, true, false, false]", Arrays.toString(m.minimal(false)), "minimal models");
+
+        m = new MinimalModels(3);
+        m.add(new int[][] {{0}, {1}, {0}}, true);
+        Check.equal("[true, true, true]", Arrays.toString(m.minimal(false)), "incomparable and equal models");
+
+        m = new MinimalModels(0);
+        m.add(new int[0][], true);
+        Check.equal(0, m.minimal(true).length, "no model");
+    }
+
+    /**
+     * Checks random models, made of a set of each kind over ids 0 to <code>ids</code> - 1.
+     * @param random
+     * @param size
+     * @param ids
+     */
+    static void testRandom(Random random, int size, int ids) {
+        int[][][] sets = new int[2][size][];
+        for (int c = 0; c < 2; c++) {
+            for (int i = 0; i < size; i++) {
+                //few distinct sets, so that many models are comparable
+                int n = random.nextInt(4);
+                sets[c][i] = new int[n];
+                for (int k = 0; k < n; k++) {
+                    sets[c][i][k] = random.nextInt(Math.min(ids, 8)) * (ids / Math.min(ids, 8));
+                }
+            }
+        }
+        MinimalModels m = new MinimalModels(size);
+        m.add(sets[0], true);
+        m.add(sets[1], false);
+
+        boolean[] expected = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            expected[i] = true;
+            for (int j = 0; j < size && expected[i]; j++) {
+                if (precedes(sets, j, i) && !precedes(sets, i, j)) {
+                    expected[i] = false;
+                }
+            }
+        }
+        Check.isTrue(Arrays.equals(expected, m.minimal(false)), "minimal models of " + size);
+        Check.isTrue(Arrays.equals(expected, m.minimal(true)), "minimal models of " + size + " in parallel");
+    }
+
+    /**
+     * Tests whether model <i>j</i> precedes model <i>i</i>: its first set contains
+     * that of <i>i</i> and its second set is contained in that of <i>i</i>.
+     */
+    private static boolean precedes(int[][][] sets, int j, int i) {
+        return contains(sets[0][j], sets[0][i]) && contains(sets[1][i], sets[1][j]);
+    }
+
+    private static boolean contains(int[] a, int[] b) {
+        for (int x : b) {
+            boolean found = false;
+            for (int y : a) {
+                found |= x == y;
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+}
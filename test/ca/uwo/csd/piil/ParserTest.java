@@ -0,0 +1,132 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+
+/**
+ * Tests the tokens of <code>Lexer</code>, the formulas built by
+ * <code>Parser</code>, and the sentences of <code>SentenceReader</code>.
+ * @author Syeed Ibn Faiz
+ */
+public class ParserTest {
+
+    public static void main(String args[]) throws Exception {
+        testLexer();
+        testParser();
+        testErrors();
+        testSentenceReader();
+        Check.passed(ParserTest.class);
+    }
+
+    /**
+     * Returns the kinds and texts of the tokens of an input.
+     * @param input
+     * @return
+     */
+    private static String tokens(String input) {
+        StringBuilder sb = new StringBuilder();
+        for (Lexer lexer = new Lexer(input); lexer.kind() != Lexer.EOF; lexer.advance()) {
+            sb.append(lexer.kind()).append(':').append(lexer.text()).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    static void testLexer() {
+        Check.equal(Lexer.IMPL + ":->", tokens("->"), "->");
+        Check.equal(Lexer.IMPL + ":- >", tokens("- >"), "- >");
+        Check.equal(Lexer.IMPL + ":>", tokens(">"), ">");
+        Check.equal(Lexer.AND + ":/\\", tokens("/\\"), "/\\");
+        Check.equal(Lexer.AND + ":&", tokens("&"), "&");
+        Check.equal(Lexer.OR + ":\\/", tokens("\\/"), "\\/");
+        Check.equal(Lexer.OR + ":|", tokens("|"), "|");
+        Check.equal(Lexer.HASH + ":~'", tokens("~'"), "~'");
+        Check.equal(Lexer.HASH + ":#", tokens("#"), "#");
+        Check.equal(Lexer.TILDE + ":~ " + Lexer.IDENT + ":a", tokens("~a"), "~a");
+        Check.equal(Lexer.NEG + ":- " + Lexer.IDENT + ":a", tokens("-a"), "-a");
+        Check.equal(Lexer.OTHER + ":/ " + Lexer.IDENT + ":a", tokens("/a"), "/ alone");
+        Check.equal(Lexer.OTHER + ":\\", tokens("\\"), "\\ alone");
+
+        //blanks are ignored inside variables, and ; and new lines separate sentences
+        Check.equal(Lexer.IDENT + ":ab_1 " + Lexer.SEP + ":; " + Lexer.IDENT + ":c " + Lexer.SEP + ":\n "
+                + Lexer.IDENT + ":d", tokens(" a b\t_1 ;c\nd"), "variables and separators");
+        Check.equal(Lexer.STAR + ":* " + Lexer.IDENT + ":8 " + Lexer.LPAREN + ":( " + Lexer.IDENT + ":a "
+                + Lexer.COMMA + ":, " + Lexer.IDENT + ":b " + Lexer.RPAREN + ":)", tokens("*8(a, b)"), "ion");
+
+        Lexer lexer = new Lexer("ab -> c");
+        lexer.advance();
+        Check.equal(3, lexer.start(), "offset of ->");
+    }
+
+    private static String parse(String str) {
+        return Check.parse(str).toString();
+    }
+
+    static void testParser() {
+        Check.equal("[⊨ (a -> b)]", parse("a -> b"), "implication");
+        Check.equal(parse("T a > b"), parse("T a -> b"), "> and ->");
+        Check.equal(parse("T a & b"), parse("T a /\\ b"), "& and /\\");
+        Check.equal(parse("T a | b"), parse("T a \\/ b"), "| and \\/");
+        Check.equal(parse("T #a"), parse("T ~'a"), "# and ~'");
+        Check.equal("[⊨ ~'(a)]", parse("T ~'a"), "~'");
+        Check.equal("[⊨ ~(a)]", parse("T ~a"), "~");
+
+        //precedence, lowest to highest: ->, |, &, !, unary connectives
+        Check.equal("[⊨ ((a | (b & c)) -> d)]", parse("a | b & c -> d"), "precedence of binary connectives");
+        Check.equal("[⊨ ((-(a) & ~'(b)) | c)]", parse("-a /\\ ~'b \\/ c"), "precedence of unary connectives");
+        Check.equal("[⊨ (a -> (b -> c))]", parse("a -> b -> c"), "grouping of ->");
+
+        Check.equal("[⊭ a, ⊫ b, ⊯ c, ⊨ d]", parse("NT a; PT b\nNPT c\nT d"), "turnstiles");
+        Check.equal("[⊯ (a & b)]", parse("NPTa & b"), "turnstile before a variable");
+        Check.equal("[⊨ ⋈(a, b), ⊨ *(a, b), ⊨ bot(a)]", parse("*8(a, b)\n*(a, b)\nbot(a)"), "ions");
+
+        //a nested formula is shared by the sentences of one parse
+        ArrayList<Formula> l = Check.parse("T (a -> b)\nNT (a -> b)");
+        Check.equal(l.get(0).getId(), l.get(1).getId(), "ids of one formula");
+        Check.isTrue(Formula.sameFactory(l.get(0), l.get(1)), "factories of one parse");
+    }
+
+    private static void fails(String str) {
+        try {
+            new Parser().parse(str);
+        } catch (Exception ex) {
+            return;
+        }
+        throw new AssertionError(str + " parsed");
+    }
+
+    static void testErrors() {
+        fails("T");
+        fails("T (a");
+        fails("T a)");
+        fails("T a b &");
+        fails("T *(a)");
+        fails("T a -> ");
+    }
+
+    private static ArrayList<String> sentences(String text) throws Exception {
+        SentenceReader reader = new SentenceReader(Channels.newChannel(new ByteArrayInputStream(text.getBytes(ResultWriter.UTF8))), ResultWriter.UTF8);
+        ArrayList<String> l = new ArrayList<String>();
+        for (String s = reader.nextSentence(); s != null; s = reader.nextSentence()) {
+            if (s.trim().length() > 0) {
+                l.add(s.trim());
+            }
+        }
+        reader.close();
+        return l;
+    }
+
+    static void testSentenceReader() throws Exception {
+        Check.equal("[T a, NT b, c]", sentences("T a; NT b\r\nc\r").toString(), "separators and line ends");
+        Check.equal("[T a, b]", sentences("T a /* comment\n over lines */\nb").toString(), "comment");
+        Check.equal("[a  b */, b]", sentences("a /*/ b */\nb").toString(), "/*/ is a comment");
+        Check.equal("[a /, b]", sentences("a //* c */\nb").toString(), "slash before a comment");
+        Check.equal("[a, b /* c]", sentences("a\nb /* c").toString(), "comment not closed");
+        Check.equal("[a -> b]", sentences("a -/**/> b").toString(), "comment inside a connective");
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+/**
+ * Tests the cache of results: what makes two problems the same, the counters,
+ * eviction by number of entries and of formulas, that truncated results are
+ * not kept, and that parallel results are kept apart.
+ * @author Syeed Ibn Faiz
+ */
+public class ResultCacheTest {
+
+    public static void main(String args[]) {
+        testKeys();
+        testEviction();
+        testTruncated();
+        testParallel();
+        Check.passed(ResultCacheTest.class);
+    }
+
+    /**
+     * Checks that a problem given in another order or case is a hit, and that
+     * other problems and options are misses.
+     */
+    static void testKeys() {
+        ResultCache cache = new ResultCache(16, 1 << 16);
+        ResultCache.Entry e = cache.solve(new Solver(), Check.parse("T (a | b)\nNT c"));
+        Check.equal(2, e.getModels().size(), "schemes of T (a | b), NT c");
+        Check.equal(1L, cache.getMisses(), "misses of a new problem");
+
+        Check.isTrue(e == cache.solve(new Solver(), Check.parse("NT c\nT (a | b)")), "hit of the sentences in another order");
+        Check.isTrue(e == cache.solve(new Solver(), Check.parse("T (A | b)\nNT C")), "hit of the sentences in another case");
+        Check.equal(2L, cache.getHits(), "hits");
+        Check.isTrue(e.getOrdering().getWarrantOrdering() == cache.solve(new Solver(), Check.parse("NT c\nT (a | b)")).getOrdering().getWarrantOrdering(),
+                "minimal models of a hit ordered again");
+
+        cache.solve(new Solver(), Check.parse("T (a | b)\nNT d"));
+        SolverOptions options = new SolverOptions();
+        options.setHeuristic(SolverOptions.FAIL_FIRST);
+        Solver solver = new Solver();
+        solver.setOptions(options);
+        Check.isTrue(e != cache.solve(solver, Check.parse("T (a | b)\nNT c")), "hit with another heuristic");
+        Check.equal(3L, cache.getMisses(), "misses of another problem and options");
+        Check.equal(3L, cache.getHits(), "hits of a problem and its minimal models");
+        Check.equal(3, cache.size(), "entries");
+        Check.equal(0L, cache.getEvictions(), "evictions of a cache not full");
+    }
+
+    /**
+     * Checks that the least recently used entries are evicted once there are
+     * too many entries or formulas.
+     */
+    static void testEviction() {
+        ResultCache cache = new ResultCache(2, 1 << 16);
+        ResultCache.Entry a = cache.solve(new Solver(), Check.parse("T a"));
+        cache.solve(new Solver(), Check.parse("T b"));
+        cache.solve(new Solver(), Check.parse("T a"));         //b is now the least recently used
+        cache.solve(new Solver(), Check.parse("T c"));
+        Check.equal(2, cache.size(), "entries of a full cache");
+        Check.equal(1L, cache.getEvictions(), "evictions of a full cache");
+        Check.isTrue(a == cache.solve(new Solver(), Check.parse("T a")), "hit of a recently used entry");
+        long misses = cache.getMisses();
+        cache.solve(new Solver(), Check.parse("T b"));
+        Check.equal(misses + 1, cache.getMisses(), "miss of an evicted entry");
+
+        //T (a | b) holds 1 formula of input and 2 of schemes
+        cache = new ResultCache(16, 5);
+        cache.solve(new Solver(), Check.parse("T (a | b)"));
+        Check.equal(3L, cache.getFormulaCount(), "formulas of T (a | b)");
+        cache.solve(new Solver(), Check.parse("T (c | d)"));
+        Check.equal(1, cache.size(), "entries within 5 formulas");
+        Check.equal(3L, cache.getFormulaCount(), "formulas within 5 formulas");
+        Check.equal(1L, cache.getEvictions(), "evictions by formulas");
+        //1 formula of input and 5 of schemes, never kept
+        cache.solve(new Solver(), Check.parse("T ((a | b) | (c | (d | e)))"));
+        Check.equal(1, cache.size(), "entries once an entry larger than the cache is solved");
+        Check.equal(3L, cache.getFormulaCount(), "formulas once an entry larger than the cache is solved");
+
+        cache.clear();
+        Check.equal(0, cache.size(), "entries once cleared");
+        Check.equal(0L, cache.getFormulaCount(), "formulas once cleared");
+    }
+
+    /**
+     * Checks that a result stopped at a limit is returned but not kept.
+     */
+    static void testTruncated() {
+        ResultCache cache = new ResultCache(16, 1 << 16);
+        SolverOptions options = new SolverOptions();
+        options.setMaxNodes(2);
+        Solver solver = new Solver();
+        solver.setOptions(options);
+        String str = "T (a | b)\nT (c | d)\nT (e | f)";
+        ResultCache.Entry e = cache.solve(solver, Check.parse(str));
+        Check.isTrue(e.isTruncated(), "result of " + str + " in 2 steps truncated");
+        Check.equal(0, cache.size(), "entries of truncated results");
+        Check.isTrue(e != cache.solve(solver, Check.parse(str)), "hit of a truncated result");
+        Check.equal(0L, cache.getHits(), "hits of truncated results");
+    }
+
+    /**
+     * Checks that a parallel result is a hit only for a parallel solver, and
+     * that a parallel result stopped at a limit is not kept.
+     */
+    static void testParallel() {
+        ResultCache cache = new ResultCache(16, 1 << 16);
+        SolverOptions options = new SolverOptions();
+        options.setMaxModels(2);
+        Solver parallel = new Solver();
+        parallel.setOptions(options);
+        parallel.setParallel(true);
+        parallel.setParallelThreshold(1);
+        Solver sequential = new Solver();
+        sequential.setOptions(options);
+
+        String str = "T (a | b)\nT (c | d)";
+        ResultCache.Entry e = cache.solve(parallel, Check.parse(str));
+        Check.isTrue(e.isTruncated(), "result of " + str + " with a limit of 2 truncated");
+        Check.equal(0, cache.size(), "entries of truncated parallel results");
+
+        str = "T (a | b)";
+        e = cache.solve(parallel, Check.parse(str));
+        Check.isTrue(!e.isTruncated(), "result of " + str + " with a limit of 2 truncated");
+        Check.isTrue(e == cache.solve(parallel, Check.parse(str)), "hit of a parallel result");
+        ResultCache.Entry s = cache.solve(sequential, Check.parse(str));
+        Check.isTrue(e != s, "hit of a parallel result for a sequential solver");
+        Check.equal(s.getModels().toString(), e.getModels().toString(), "schemes of " + str + " in parallel");
+        Check.equal(2, cache.size(), "entries of parallel and sequential results");
+    }
+}
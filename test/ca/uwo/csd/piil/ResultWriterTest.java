@@ -0,0 +1,90 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Tests the text of formulas, and that a deeply nested formula is written
+ * from a thread with a small stack, by <code>Main</code> and as a key of the
+ * <code>ResultCache</code>.
+ * @author Syeed Ibn Faiz
+ */
+public class ResultWriterTest {
+
+    private static final int CONJUNCTS = 20000;
+    private static final long STACK_SIZE = 256 * 1024;
+
+    public static void main(String args[]) throws Exception {
+        testFormulas();
+        final Throwable failure[] = new Throwable[1];
+        Thread thread = new Thread(null, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    testDeep();
+                } catch (Throwable ex) {
+                    failure[0] = ex;
+                }
+            }
+        }, "deep", STACK_SIZE);
+        thread.start();
+        thread.join();
+        if (failure[0] != null) {
+            throw new AssertionError("deep formula: " + failure[0], failure[0]);
+        }
+        Check.passed(ResultWriterTest.class);
+    }
+
+    static void testFormulas() {
+        ArrayList<Formula> l = Check.parse("T (a -> -b)\nNPT ~'(a & (b | c))\nPT *3(a, ~b)\nNT *(a, bot(b))\nT (a ! b)");
+        Check.equal("⊨ (a -> -(b))", l.get(0).toString(), "text of an implication");
+        Check.equal("⊯ ~'((a & (b | c)))", l.get(1).toString(), "text of a conjunction");
+        Check.equal("⊫ O(a, ~(b))", l.get(2).toString(), "text of an ion of rank 3");
+        Check.equal("⊭ *(a, bot(b))", l.get(3).toString(), "text of an ion");
+        Check.equal("⊨ (a ! b)", l.get(4).toString(), "text of a !");
+    }
+
+    /**
+     * Solves and writes one conjunction of many variables.
+     * @throws Exception
+     */
+    static void testDeep() throws Exception {
+        StringBuilder sb = new StringBuilder("T x0");
+        for (int i = 1; i < CONJUNCTS; i++) {
+            sb.append(" & x").append(i);
+        }
+        File input = File.createTempFile("piil", ".in");
+        File output = File.createTempFile("piil", ".out");
+        try {
+            Files.write(input.toPath(), sb.toString().getBytes(ResultWriter.UTF8));
+            Check.equal("1 model found.", Main.solveFile(input, output, false, new SolverOptions(), ResultWriter.UTF8), "summary");
+            String text = new String(Files.readAllBytes(output.toPath()), ResultWriter.UTF8);
+            Check.isTrue(text.startsWith("Input: [⊨ (x0 & (x1 & "), "input written");
+            Check.isTrue(text.contains(",⊨ x" + (CONJUNCTS - 1) + ","), "scheme written");
+            Check.isTrue(text.endsWith("}, {}, {}>"), "minimal models written");
+        } finally {
+            input.delete();
+            output.delete();
+        }
+
+        ArrayList<Formula> l = Check.parse(sb.toString());
+        String str = l.get(0).toString();
+        Check.isTrue(str.endsWith("x" + (CONJUNCTS - 1) + repeat(')', CONJUNCTS - 1)), "text of the conjunction");
+        Check.isTrue(ResultCache.key(l, new SolverOptions(), false).contains(FormulaFactory.fold(str)), "key of the conjunction");
+    }
+
+    private static String repeat(char c, int n) {
+        StringBuilder sb = new StringBuilder(n);
+        for (int i = 0; i < n; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+
+/**
+ * Tests the server over the loopback address: the reply to a problem is the
+ * output <code>Main</code> writes for it, a problem sent again is answered from
+ * the cache, and a malformed problem gets an error line.
+ * @author Syeed Ibn Faiz
+ */
+public class ServerTest {
+
+    public static void main(String args[]) throws Exception {
+        final Server server = new Server(0, 2, 2, false, new SolverOptions());
+        server.setCache(new ResultCache(16, 1 << 16));
+        int port = server.open();
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        });
+        thread.start();
+        try {
+            testRoundTrip(port, new File("examples/nixon.in"));
+            testRoundTrip(port, new File("examples/tweety_bird.in"));
+            Check.equal(2L, server.getCache().getHits(), "problems sent again answered from the cache");
+            testParseError(port);
+        } finally {
+            server.close();
+        }
+        thread.join(10000);
+        Check.isTrue(!thread.isAlive(), "server still serving once closed");
+        Check.passed(ServerTest.class);
+    }
+
+    /**
+     * Sends a problem twice and compares the replies with the output of <code>Main</code>.
+     * @param port
+     * @param input
+     * @throws Exception
+     */
+    static void testRoundTrip(int port, File input) throws Exception {
+        File output = File.createTempFile("piil", ".out");
+        try {
+            Main.solveFile(input, output, false, new SolverOptions(), ResultWriter.UTF8);
+            String expected = new String(Files.readAllBytes(output.toPath()), ResultWriter.UTF8);
+            String problem = new String(Files.readAllBytes(input.toPath()), ResultWriter.UTF8);
+            Check.equal(expected, send(port, problem), "reply to " + input);
+            Check.equal(expected, send(port, problem), "second reply to " + input);
+        } finally {
+            output.delete();
+        }
+    }
+
+    static void testParseError(int port) throws Exception {
+        String reply = send(port, "T (a & b\n");
+        Check.isTrue(reply.startsWith("Exception occured"), "reply to a malformed problem: " + reply);
+        Check.isTrue(reply.endsWith("\n") && reply.indexOf('\n') == reply.length() - 1, "error reply of one line: " + reply);
+    }
+
+    /**
+     * Sends a problem to the server and reads its reply.
+     * @param port
+     * @param problem
+     * @return
+     * @throws IOException
+     */
+    private static String send(int port, String problem) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            socket.getOutputStream().write(problem.getBytes(ResultWriter.UTF8));
+            socket.shutdownOutput();
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            byte buffer[] = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                reply.write(buffer, 0, n);
+            }
+            return new String(reply.toByteArray(), ResultWriter.UTF8);
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Tests the limits of a search: the number of interpretation schemes, the
+ * depth, the number of steps and the time, sequentially and in parallel; and
+ * the memo of closed branches.
+ * @author Syeed Ibn Faiz
+ */
+public class SolverOptionsTest {
+
+    /* Branches a, c; a, c; b, c; b, c: every scheme is found twice */
+    private static final String REPEATED = "T (a | b)\nT (c | c)";
+
+    public static void main(String args[]) {
+        for (int i = 0; i < 2; i++) {
+            boolean parallel = i == 1;
+            testUnlimited(parallel);
+            testMaxModels(parallel);
+            testMaxDepth(parallel);
+            testMaxNodes(parallel);
+            testTimeLimit(parallel);
+        }
+        testIterator();
+        testMemo();
+        Check.passed(SolverOptionsTest.class);
+    }
+
+    private static Solver solver(SolverOptions options, boolean parallel) {
+        Solver solver = new Solver();
+        solver.setOptions(options);
+        solver.setParallel(parallel);
+        solver.setParallelThreshold(1);
+        return solver;
+    }
+
+    /**
+     * Returns <i>n</i> independent disjunctions, whose tableau has 2^<i>n</i> open branches.
+     * @param n
+     * @return
+     */
+    private static String disjunctions(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append("T (x").append(i).append(" | y").append(i).append(")\n");
+        }
+        return sb.toString();
+    }
+
+    static void testUnlimited(boolean parallel) {
+        Solver solver = solver(new SolverOptions(), parallel);
+        ArrayList<Interpretation> models = solver.solve(Check.parse(REPEATED));
+        Check.equal(2, models.size(), "schemes of " + REPEATED);
+        Check.isTrue(!solver.isTruncated(), "complete search truncated");
+    }
+
+    /**
+     * Checks that a limit of <i>n</i> schemes gives <i>n</i> distinct schemes,
+     * however many open branches repeat a scheme.
+     */
+    static void testMaxModels(boolean parallel) {
+        for (int n = 1; n <= 2; n++) {
+            SolverOptions options = new SolverOptions();
+            options.setMaxModels(n);
+            Solver solver = solver(options, parallel);
+            ArrayList<Interpretation> models = solver.solve(Check.parse(REPEATED));
+            Check.equal(n, models.size(), "schemes with a limit of " + n);
+            Check.equal(n, new HashSet<Interpretation>(models).size(), "distinct schemes with a limit of " + n);
+            if (n < 2) {
+                Check.isTrue(solver.isTruncated(), "search stopped at " + n + " schemes not truncated");
+            }
+        }
+
+        SolverOptions options = new SolverOptions();
+        options.setMaxModels(5);
+        Solver solver = solver(options, parallel);
+        Check.equal(5, solver.solve(Check.parse(disjunctions(8))).size(), "schemes of 8 disjunctions with a limit of 5");
+        Check.isTrue(solver.isTruncated(), "search stopped at 5 schemes not truncated");
+
+        //the first schemes of the tableau, however the tasks are scheduled
+        String problems[] = {REPEATED, disjunctions(8), "T (a | b) & (c | d) & (e | f) & (g | h)\nT (i | j) & (k | l)"};
+        for (String str : problems) {
+            for (int n = 1; n <= 6; n++) {
+                options = new SolverOptions();
+                options.setMaxModels(n);
+                Solver sequential = solver(options, false);
+                String expected = String.valueOf(sequential.solve(Check.parse(str)));
+                for (int run = 0; run < 10; run++) {
+                    solver = solver(options, parallel);
+                    Check.equal(expected, String.valueOf(solver.solve(Check.parse(str))), "schemes of " + str + " with a limit of " + n);
+                    Check.equal(sequential.isTruncated(), solver.isTruncated(), "search of " + str + " with a limit of " + n + " truncated");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the depth counts the rules applied, not the formulas of the
+     * problem, and that a limit keeps the schemes of the shallow branches.
+     */
+    static void testMaxDepth(boolean parallel) {
+        SolverOptions options = new SolverOptions();
+        options.setMaxDepth(3);
+        Solver solver = solver(options, parallel);
+        Check.equal(null, solver.solve(Check.parse(disjunctions(4))), "schemes deeper than the limit");
+        Check.isTrue(solver.isTruncated(), "search stopped at a depth not truncated");
+
+        options.setMaxDepth(4);
+        solver = solver(options, parallel);
+        Check.equal(16, solver.solve(Check.parse(disjunctions(4))).size(), "schemes at the depth");
+        Check.isTrue(!solver.isTruncated(), "search at the depth truncated");
+
+        //100 formulas, only 2 of them branching
+        StringBuilder sb = new StringBuilder(disjunctions(2));
+        for (int i = 0; i < 98; i++) {
+            sb.append("T z").append(i).append('\n');
+        }
+        options.setMaxDepth(2);
+        solver = solver(options, parallel);
+        Check.equal(4, solver.solve(Check.parse(sb.toString())).size(), "schemes of 100 formulas at depth 2");
+        Check.isTrue(!solver.isTruncated(), "search of 100 formulas at depth 2 truncated");
+
+        //a at depth 1; b and c at depth 2, cut off
+        String str = "T (a | (b | c))";
+        options.setMaxDepth(1);
+        solver = solver(options, parallel);
+        ArrayList<Interpretation> models = solver.solve(Check.parse(str));
+        Check.equal(new Solver().solve(Check.parse("T a")), models, "schemes of " + str + " at depth 1");
+        Check.isTrue(solver.isTruncated(), "search of " + str + " cut at depth 1 not truncated");
+        options.setMaxDepth(2);
+        solver = solver(options, parallel);
+        Check.equal(3, solver.solve(Check.parse(str)).size(), "schemes of " + str + " at depth 2");
+    }
+
+    static void testMaxNodes(boolean parallel) {
+        SolverOptions options = new SolverOptions();
+        options.setMaxNodes(10);
+        Solver solver = solver(options, parallel);
+        ArrayList<Interpretation> models = solver.solve(Check.parse(disjunctions(10)));
+        Check.isTrue(models == null || models.size() < 1024, "schemes found in 10 steps");
+        Check.isTrue(solver.isTruncated(), "search stopped after 10 steps not truncated");
+    }
+
+    /**
+     * Checks that a search of 2^20 branches stops soon after its deadline.
+     */
+    static void testTimeLimit(boolean parallel) {
+        SolverOptions options = new SolverOptions();
+        options.setTimeLimit(100);
+        Solver solver = solver(options, parallel);
+        long start = System.currentTimeMillis();
+        solver.solve(Check.parse(disjunctions(20)));
+        long elapsed = System.currentTimeMillis() - start;
+        Check.isTrue(solver.isTruncated(), "search stopped at the deadline not truncated");
+        Check.isTrue(elapsed < 5000, "search of 100 ms took " + elapsed + " ms");
+    }
+
+    /**
+     * Checks that the iterator gives the schemes of <code>solve</code>, in
+     * order, and skips the repeated ones.
+     */
+    static void testIterator() {
+        ArrayList<Interpretation> models = new Solver().solve(Check.parse(REPEATED));
+        ArrayList<Interpretation> iterated = new ArrayList<Interpretation>();
+        for (Iterator<Interpretation> it = new Solver().iterator(Check.parse(REPEATED)); it.hasNext();) {
+            iterated.add(it.next());
+        }
+        Check.equal(models.toString(), iterated.toString(), "schemes of the iterator");
+    }
+
+    /**
+     * Checks that a branch whose subtree is known to be closed is not expanded
+     * again, that the key of a branch ignores the order of its formulas, and
+     * that the memo leaves the schemes unchanged.
+     */
+    static void testMemo() {
+        //y | y gives two equal branches; the second split of x | x is known closed
+        //once the first is expanded: 9 steps instead of 15
+        String str = "T (y | y)\nT (x | x)\nT (p | q)\nNT p\nNT q";
+        for (int memoSize = 0; memoSize <= 100; memoSize += 100) {
+            SolverOptions options = new SolverOptions();
+            options.setMemoSize(memoSize);
+            options.setMaxNodes(10);
+            Solver solver = solver(options, false);
+            Check.equal(null, solver.solve(Check.parse(str)), "schemes of " + str + " with a memo of " + memoSize);
+            Check.equal(memoSize == 0, solver.isTruncated(), "search of " + str + " in 10 steps with a memo of " + memoSize + " truncated");
+        }
+
+        //equal formulas with different prefixes
+        ArrayList<Formula> l = Check.parse("T a\nT a\nT (b | c)");
+        l.get(0).addJustification(new Justification(1, false));
+        l.get(1).addJustification(new Justification(1, false));
+        ArrayList<Formula> reversed = new ArrayList<Formula>(l);
+        Collections.reverse(reversed);
+        BranchKey key = new Branch(l).key();
+        Check.equal(key, new Branch(reversed).key(), "key of reversed formulas");
+        Check.equal(key.hashCode(), new Branch(reversed).key().hashCode(), "hash of the key of reversed formulas");
+        Check.isTrue(!key.equals(new Branch(l).expandFirst().key()), "key of a branch with a formula expanded");
+
+        Random random = new Random(18);
+        for (int i = 0; i < 100; i++) {
+            String problem = Check.randomProblem(random, 4, 3);
+            for (int p = 0; p < 2; p++) {
+                ArrayList<HashSet<Interpretation>> schemes = new ArrayList<HashSet<Interpretation>>();
+                for (int m = 0; m < 2; m++) {
+                    SolverOptions options = new SolverOptions();
+                    options.setMemoSize(m * 1000);
+                    ArrayList<Interpretation> models = solver(options, p == 1).solve(Check.parse(problem));
+                    schemes.add(models == null ? new HashSet<Interpretation>() : new HashSet<Interpretation>(models));
+                }
+                Check.equal(schemes.get(0), schemes.get(1), "schemes of " + problem + " with a memo" + (p == 1 ? " in parallel" : ""));
+            }
+        }
+    }
+}
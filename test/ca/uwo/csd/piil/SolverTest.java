@@ -0,0 +1,168 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Tests the tableau: the output for the examples, the closure rules of a
+ * branch, that extending a branch leaves the branch unchanged, and that both
+ * search orders find the same schemes. The expected outputs are in
+ * <code>test/examples</code>, in UTF-8.
+ * @author Syeed Ibn Faiz
+ */
+public class SolverTest {
+
+    public static void main(String args[]) throws Exception {
+        testExamples(new File("examples"), new File("test/examples"));
+        testClosure();
+        testPersistence();
+        testSearchOrder();
+        Check.passed(SolverTest.class);
+    }
+
+    /**
+     * Solves every example, sequentially and in parallel, and compares the
+     * output with the expected one.
+     * @param inputs
+     * @param outputs
+     * @throws Exception
+     */
+    static void testExamples(File inputs, File outputs) throws Exception {
+        File files[] = inputs.listFiles();
+        Check.isTrue(files != null, "no directory " + inputs);
+        int n = 0;
+        for (File in : files) {
+            if (!in.getName().endsWith(".in")) {
+                continue;
+            }
+            String name = in.getName().substring(0, in.getName().length() - 3);
+            String expected = new String(Files.readAllBytes(new File(outputs, name + ".out").toPath()), ResultWriter.UTF8);
+            Check.equal(expected, solve(in, false), name);
+            Check.equal(expected, solve(in, true), name + " in parallel");
+            n++;
+        }
+        Check.isTrue(n > 0, "no example in " + inputs);
+    }
+
+    private static String solve(File in, boolean parallel) throws Exception {
+        SentenceReader reader = new SentenceReader(in);
+        ArrayList<Formula> fList = new Parser().parse(reader);
+        reader.close();
+        Solver solver = new Solver();
+        solver.setParallel(parallel);
+        solver.setParallelThreshold(1);             //fork at every split
+        ArrayList<Interpretation> result = solver.solve(fList);
+        StringWriter out = new StringWriter();
+        ResultWriter writer = new ResultWriter(out);
+        Ordering ordering = new Ordering(result);
+        ordering.setParallel(parallel);
+        writer.writeResult(fList, result, solver.isTruncated(), ordering);
+        writer.flush();
+        return out.toString();
+    }
+
+    /**
+     * Checks which pairs of literals close a branch as they are added.
+     */
+    static void testClosure() {
+        closes("T a\nNT a", true);
+        closes("PT a\nNPT a", true);
+        closes("T a\nNPT a", true);             //true implies potentially true
+        closes("NT a\nPT a", false);
+        closes("T a\nNT A", true);              //variables ignore case
+        closes("T a\nNT b", false);
+        closes("T False", true);
+        closes("NT True", true);
+        closes("T True", false);
+
+        //closed only once expanded
+        satisfiable("T a\nT -a", false);
+        satisfiable("T (a & -a)", false);
+        satisfiable("T (a -> b)\nT a\nNT b", false);
+        satisfiable("PT a\nPT -a", true);
+        satisfiable("T (a | b)\nNT a", true);
+        satisfiable("", false);                 //no formula, no scheme
+    }
+
+    private static void closes(String str, boolean closed) {
+        Check.equal(closed, new Branch(Check.parse(str)).isClosed(), "closure of " + str);
+    }
+
+    private static void satisfiable(String str, boolean sat) {
+        Check.equal(sat, new Solver().isSatisfiable(Check.parse(str)), "satisfiability of " + str);
+        Solver solver = new Solver();
+        solver.setParallel(true);
+        solver.setParallelThreshold(1);
+        Check.equal(sat, solver.solve(Check.parse(str)) != null, "satisfiability of " + str + " in parallel");
+        solver.setParallelThreshold(0);         //every branch searched by a task, even an empty one
+        Check.equal(sat, solver.isSatisfiable(Check.parse(str)), "first model of " + str + " in parallel");
+    }
+
+    /**
+     * Checks that the branches made from a branch share it without changing it.
+     */
+    static void testPersistence() {
+        ArrayList<Formula> l = Check.parse("T a\nT (b | c)\nNT d\nNT a");
+        Branch root = new Branch(new ArrayList<Formula>(l.subList(0, 1)));
+        Branch left = root.append(l.get(1));
+        Branch right = root.append(l.get(2));
+        Check.equal(1, root.size(), "size of the root");
+        Check.equal(l.subList(0, 1), root.getFormulas(), "formulas of the root");
+        Check.equal(l.subList(0, 2), left.getFormulas(), "formulas of the left branch");
+        Check.equal(2, right.size(), "size of the right branch");
+        Check.isTrue(right.getFormulas().get(1) == l.get(2), "last formula of the right branch");
+
+        Check.equal(1, root.countUnexpanded(), "unexpanded formulas of the root");
+        Branch expanded = root.expandFirst();
+        Check.equal(0, expanded.countUnexpanded(), "unexpanded formulas once expanded");
+        Check.equal(1, root.countUnexpanded(), "unexpanded formulas of the root once a successor is expanded");
+
+        Branch closed = left.append(l.get(3));
+        Check.isTrue(closed.isClosed(), "closed branch");
+        Check.isTrue(!left.isClosed() && !root.isClosed(), "branches closed by a successor");
+    }
+
+    /**
+     * Checks that breadth-first and depth-first orders find the same schemes,
+     * and that neither needs a deep Java stack for a deep tableau.
+     */
+    static void testSearchOrder() {
+        Random random = new Random(10);
+        for (int i = 0; i < 400; i++) {
+            String str = Check.randomProblem(random, 3, 3);
+            Check.equal(schemes(str, SolverOptions.DEPTH_FIRST), schemes(str, SolverOptions.BREADTH_FIRST), "schemes of " + str + " breadth-first");
+        }
+
+        //one branch of 5000 literals, then 2^3 branches below it
+        StringBuilder sb = new StringBuilder("T x0");
+        for (int i = 1; i < 5000; i++) {
+            sb.append(" & x").append(i);
+        }
+        sb.append("\nT (a | b)\nT (c | d)\nT (e | f)");
+        for (int order = SolverOptions.DEPTH_FIRST; order <= SolverOptions.BREADTH_FIRST; order++) {
+            Check.equal(8, schemes(sb.toString(), order).size(), "schemes of 5000 conjuncts in order " + order);
+        }
+    }
+
+    private static HashSet<Interpretation> schemes(String str, int order) {
+        SolverOptions options = new SolverOptions();
+        options.setSearchOrder(order);
+        Solver solver = new Solver();
+        solver.setOptions(options);
+        ArrayList<Interpretation> models = solver.solve(Check.parse(str));
+        HashSet<Interpretation> result = new HashSet<Interpretation>();
+        if (models != null) {
+            result.addAll(models);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package ca.uwo.csd.piil;
+
+import java.util.ArrayList;
+
+/**
+ * Tests the ids of propositional variables: reserved ids, case folding, and
+ * the comparison of atoms of one parse or of different parses.
+ * @author Syeed Ibn Faiz
+ */
+public class SymbolTableTest {
+
+    public static void main(String args[]) {
+        testIds();
+        testAtoms();
+        testSolver();
+        Check.passed(SymbolTableTest.class);
+    }
+
+    static void testIds() {
+        SymbolTable table = new SymbolTable();
+        Check.equal(2, table.size(), "ids of a new table");
+        Check.equal(SymbolTable.TRUE_ID, table.getId("True"), "id of True");
+        Check.equal(SymbolTable.FALSE_ID, table.getId("FALSE"), "id of FALSE");
+        Check.equal(SymbolTable.TRUE_ID, SymbolTable.reservedId("true"), "reserved id of true");
+        Check.equal(SymbolTable.UNKNOWN_ID, SymbolTable.reservedId("a"), "reserved id of a");
+
+        int a = table.getId("Abc");
+        Check.equal(2, a, "first id given");
+        Check.equal(a, table.getId("aBC"), "id of another spelling");
+        Check.equal(3, table.getId("b_1"), "next id given");
+        Check.equal("Abc", table.getName(a), "name of an id");
+        Check.equal(4, table.size(), "ids given");
+    }
+
+    static void testAtoms() {
+        ArrayList<Formula> l = Check.parse("T a\nT A\nT b\nT (a | (b & True))\nT -FALSE");
+        Check.equal(l.get(0).getVarId(), l.get(1).getVarId(), "ids of a and A");
+        Check.isTrue(l.get(0).getVarId() != l.get(2).getVarId(), "ids of a and b");
+        Check.isTrue(Formula.sameVar(l.get(0), l.get(1)), "a and A");
+        Check.isTrue(!Formula.sameVar(l.get(0), l.get(2)), "a and b");
+        Check.equal(SymbolTable.TRUE_ID, l.get(3).getChild(1).getChild(1).getVarId(), "id of True");
+        Check.equal(SymbolTable.FALSE_ID, l.get(4).getChild(0).getVarId(), "id of FALSE");
+
+        //atoms of different parses are compared by name
+        ArrayList<Formula> other = Check.parse("T b\nT a");
+        Check.isTrue(!Formula.sameFactory(l.get(0), other.get(1)), "factories of two parses");
+        Check.isTrue(Formula.sameVar(l.get(0), other.get(1)), "a of two parses");
+        Check.isTrue(!Formula.sameVar(l.get(0), other.get(0)), "a and b of two parses");
+    }
+
+    /**
+     * Checks that the solver and the orderings see one variable in all spellings.
+     */
+    static void testSolver() {
+        Check.isTrue(!new Solver().isSatisfiable(Check.parse("T Tweety\nNT tWEETY")), "Tweety and tWEETY");
+        ArrayList<Interpretation> models = new Solver().solve(Check.parse("T (p | P)"));
+        Check.equal(1, models.size(), "models of p | P");
+        Check.equal("<{⊨ p}, {}, {}>", models.get(0).toString(), "model of p | P");
+
+        //schemes differing only in the spelling of a variable are the same scheme
+        models = new Solver().solve(Check.parse("T *(a, a)\nT *(A, A)"));
+        Check.equal(3, models.size(), "models of *(a, a) and *(A, A)");
+        Ordering ordering = new Ordering(models);
+        Check.equal("[<{}, {+* A}, {⊨₅ A}>]", ordering.getJustificationOrdering().toString(), "justification minimal models");
+        Check.equal("[<{}, {+* A}, {⊨₅ A}>]", ordering.getWarrantOrdering().toString(), "warrant minimal models");
+    }
+}